@@ -0,0 +1,20 @@
+package xcs;
+
+import java.util.List;
+
+/**
+ * An environment with a small enough set of inputs that a population can be
+ * evaluated exactly, by scoring it once on every input rather than on random samples.
+ *
+ * Rewards must depend only on the state and action, and getReward must be safe to
+ * call from several threads at once for the enumerated states.
+ *
+ * @param <S> The type of State that this Environment will provide
+ * @param <A> The type of actions in the action set that the XCS will be providing
+ */
+public interface EnumerableEnvironment<S extends State<?>, A> extends Environment<S, A> {
+	/**
+	 * @return Every state this environment can provide, or null if there are too many to enumerate
+	 */
+	public List<S> enumerateStates();
+}
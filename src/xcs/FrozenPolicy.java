@@ -0,0 +1,149 @@
+package xcs;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The greedy policy of a population compiled into a lookup of the action and prediction
+ * of each state, so that choosing an action does not match the population.
+ *
+ * With a StateCodec numbering at most MAX_TABLE_STATES states, every decision is kept in a
+ * dense table that XCS.freeze fills up front, and a lookup is an array load. Otherwise
+ * decisions are made by the underlying PopulationPolicy the first time a state is seen and
+ * cached, so the cache grows with the number of distinct states looked up.
+ *
+ * Each state keeps the best action of PopulationPolicy.chooseAction. In unmatched states an action
+ * is chosen at random on every lookup, as PopulationPolicy does. For NXCS and RXCS, which sample
+ * actions by theta when evaluated, the most likely action is always taken, so the frozen policy is
+ * their greedy policy rather than the one PopulationPolicy.getAction follows.
+ *
+ * Like PopulationPolicy, it is unaffected by further learning and can be used from many threads at once.
+ *
+ * @param <S> The type of state this policy acts on
+ * @param <C> The type of condition of the classifiers
+ * @param <A> The type of actions this policy chooses
+ */
+public class FrozenPolicy<S extends State<C>, C extends Condition<S, C>, A> implements Policy<S, A> {
+	/* The most states that are given a dense table. With one byte and one float each, 80MB */
+	public static final long MAX_TABLE_STATES = 1L << 24;
+
+	/* The policy that decisions are compiled from */
+	private final PopulationPolicy<S, C, A> policy;
+
+	/* Numbers the states of the table, or null if decisions are cached instead */
+	private final StateCodec<S> codec;
+
+	/* Marks an unmatched state, where the action is chosen at random */
+	private static final int UNMATCHED = -1;
+
+	/* The position in the action set of the action chosen in each state, or UNMATCHED, indexed by code */
+	private final byte[] tableActions;
+
+	/* The value of the chosen action in each state, indexed by code */
+	private final float[] tablePredictions;
+
+	/* The decisions made so far, when there is no table */
+	private final ConcurrentMap<S, Decision> cache;
+
+	/**
+	 * An action chosen in a state and its value
+	 */
+	private static final class Decision {
+		final int action;
+		final double prediction;
+
+		Decision(int action, double prediction){
+			this.action = action;
+			this.prediction = prediction;
+		}
+	}
+
+	/**
+	 * Creates a policy that caches the decisions of the given policy as states are seen
+	 * @param policy The policy to compile
+	 */
+	public FrozenPolicy(PopulationPolicy<S, C, A> policy){
+		this(policy, null);
+	}
+
+	/**
+	 * Creates a policy over the states numbered by the given codec. If the codec has few
+	 * enough states for a table, the table must be filled before the policy is used.
+	 * @param policy The policy to compile
+	 * @param codec Numbers the states, or null to cache decisions instead
+	 */
+	public FrozenPolicy(PopulationPolicy<S, C, A> policy, StateCodec<S> codec){
+		this.policy = policy;
+		if(codec != null && codec.getStateCount() <= MAX_TABLE_STATES && policy.getNumActions() <= Byte.MAX_VALUE){
+			this.codec = codec;
+			tableActions = new byte[(int)codec.getStateCount()];
+			tablePredictions = new float[(int)codec.getStateCount()];
+			cache = null;
+		}
+		else{
+			this.codec = null;
+			tableActions = null;
+			tablePredictions = null;
+			cache = new ConcurrentHashMap<S, Decision>();
+		}
+	}
+
+	/**
+	 * @return Whether decisions are kept in a dense table rather than cached
+	 */
+	public boolean hasTable(){
+		return tableActions != null;
+	}
+
+	/**
+	 * @return The number of states in the table, or 0 if there is none
+	 */
+	public int getTableSize(){
+		return tableActions == null ? 0 : tableActions.length;
+	}
+
+	/**
+	 * Compiles the decisions of the states with codes from start up to (but excluding) end
+	 * into the table. Different ranges can be filled from different threads.
+	 */
+	void fill(int start, int end){
+		double[] values = new double[policy.getNumActions()];
+		for(int code = start;code < end;code ++){
+			int action = policy.chooseAction(codec.decode(code), values);
+			tableActions[code] = (byte)action;
+			tablePredictions[code] = action == UNMATCHED ? Float.NaN : (float)values[action];
+		}
+	}
+
+	@Override
+	public A getAction(S state){
+		int action;
+		if(tableActions != null)action = tableActions[(int)codec.encode(state)];
+		else action = decide(state).action;
+
+		if(action == UNMATCHED)action = ThreadLocalRandom.current().nextInt(policy.getNumActions());
+		return policy.getAction(action);
+	}
+
+	/**
+	 * @return The value of the best action in the given state: its summed theta or fitness weighted
+	 * 			prediction, NaN if the state is unmatched. Single precision when kept in a table
+	 */
+	public double getPrediction(S state){
+		if(tablePredictions != null)return tablePredictions[(int)codec.encode(state)];
+		return decide(state).prediction;
+	}
+
+	private Decision decide(S state){
+		Decision decision = cache.get(state);
+		if(decision == null){
+			double[] values = new double[policy.getNumActions()];
+			int action = policy.chooseAction(state, values);
+			//Racing threads may both make the decision, which is harmless as they agree
+			decision = new Decision(action, action == UNMATCHED ? Double.NaN : values[action]);
+			cache.putIfAbsent(state, decision);
+		}
+		return decision;
+	}
+}
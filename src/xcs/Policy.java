@@ -0,0 +1,18 @@
+package xcs;
+
+/**
+ * A mapping from states to actions, such as the policy of a trained XCS. Policies may
+ * choose at random; those that do can implement StochasticPolicy to say how likely each
+ * action is. Implementations should be safe to share between threads.
+ *
+ * @param <S> The type of state this policy acts on
+ * @param <A> The type of actions this policy chooses
+ */
+public interface Policy<S extends State<?>, A> {
+	/**
+	 * Chooses the action to perform in the given state
+	 * @param state The current state
+	 * @return The action to perform
+	 */
+	public A getAction(S state);
+}
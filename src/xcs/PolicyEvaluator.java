@@ -0,0 +1,19 @@
+package xcs;
+
+/**
+ * An environment that can measure the performance of a policy exactly,
+ * rather than by sampling episodes.
+ *
+ * @param <S> The type of State the policy acts on
+ * @param <A> The type of actions the policy chooses
+ */
+public interface PolicyEvaluator<S extends State<?>, A> {
+	/**
+	 * Measures the expected performance of the given policy, taking each action with the
+	 * probability the policy gives it, on the same scale as the estimate that XCS logs from
+	 * sampled episodes
+	 * @param policy The policy to evaluate
+	 * @return The performance of the policy
+	 */
+	public double evaluate(StochasticPolicy<S, A> policy);
+}
@@ -0,0 +1,55 @@
+package xcs;
+
+import java.util.Set;
+
+/**
+ * An index over the conditions of an XCS population that finds the match set of a
+ * state without testing every classifier. XCS keeps the index in step with the population,
+ * adding and removing classifiers as they enter and leave it.
+ *
+ * Classifiers are identified by reference, as Classifier.equals does not identify them.
+ *
+ * @param <S> The type of state that is matched
+ * @param <C> The type of condition that is indexed
+ * @param <A> The type of actions of the classifiers
+ */
+public interface PopulationIndex<S extends State<C>, C extends Condition<S, C>, A> {
+	/**
+	 * Adds a classifier that has entered the population
+	 * @param classifier The classifier to add
+	 */
+	public void add(Classifier<A, C> classifier);
+
+	/**
+	 * Removes a classifier that has left the population. Does nothing if it is not in the index
+	 * @param classifier The classifier to remove
+	 */
+	public void remove(Classifier<A, C> classifier);
+
+	/**
+	 * Re-indexes a classifier whose condition has been changed in place,
+	 * for instance by mutation or crossover
+	 * @param classifier The changed classifier
+	 */
+	public void update(Classifier<A, C> classifier);
+
+	/**
+	 * Removes every classifier from the index
+	 */
+	public void clear();
+
+	/**
+	 * Finds every indexed classifier whose condition matches the given state
+	 * @param state The state to match
+	 * @return A new, modifiable set of the matching classifiers
+	 */
+	public Set<Classifier<A, C>> match(S state);
+
+	/**
+	 * Finds an indexed classifier whose condition equals the given one and that has the given action
+	 * @param condition The condition to look for
+	 * @param action The action to look for
+	 * @return Such a classifier, or null if there is none
+	 */
+	public Classifier<A, C> find(C condition, A action);
+}
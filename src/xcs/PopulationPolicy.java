@@ -0,0 +1,334 @@
+package xcs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The policy of a population of classifiers, choosing actions the way an XCS does when it is
+ * evaluated (runXCSEvaluation):
+ * <ul>
+ * <li>Voting by prediction, or by theta without sampling (NXCS2), the action with the highest value
+ * is chosen. Ties go to the action earliest in the action set.</li>
+ * <li>Sampling by theta (NXCS and RXCS), each action is chosen with probability proportional to the
+ * exponential of its summed theta, clamped to [-20, 20].</li>
+ * <li>In an unmatched state, where no matching classifier advocates any action, every action is
+ * equally likely.</li>
+ * </ul>
+ * getActionProbabilities gives this distribution exactly, for evaluators that work out expected
+ * performance. chooseAction gives the greedy choice alone, and says when a state is unmatched.
+ *
+ * Copies the conditions and parameters of the population it is created from, so it
+ * is unaffected by further learning and can be used from many threads at once.
+ *
+ * @param <S> The type of state this policy acts on
+ * @param <C> The type of condition of the classifiers
+ * @param <A> The type of actions this policy chooses
+ */
+public class PopulationPolicy<S extends State<C>, C extends Condition<S, C>, A> implements StochasticPolicy<S, A> {
+	/* The actions that can be chosen */
+	private final A[] actionSet;
+
+	/* The condition of each classifier */
+	private final List<C> conditions;
+
+	/* The index into actionSet of the action of each classifier */
+	private final int[] actions;
+
+	/* The weighted vote of each classifier. Theta, or prediction * fitness */
+	private final double[] votes;
+
+	/* The fitness of each classifier, when voting by prediction */
+	private final double[] fitness;
+
+	/* Whether actions are chosen by summed theta rather than fitness weighted prediction */
+	private final boolean useTheta;
+
+	/* Whether actions are sampled from the distribution of summed theta, rather than the best taken */
+	private final boolean sampleTheta;
+
+	/* The number of states matched together by getActions, keeping their sums in cache */
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	 * Creates a policy from the given population
+	 * @param actionSet The actions that can be chosen
+	 * @param population The classifiers to copy
+	 * @param useTheta Whether to choose actions by summed theta (NXCS, NXCS2 and RXCS),
+	 * 			rather than by fitness weighted prediction
+	 * @param sampleTheta Whether to sample actions from the distribution of summed theta (NXCS and RXCS),
+	 * 			rather than take the best. Ignored unless useTheta is set
+	 */
+	public PopulationPolicy(A[] actionSet, Collection<Classifier<A, C>> population, boolean useTheta, boolean sampleTheta){
+		this.actionSet = actionSet.clone();
+		this.useTheta = useTheta;
+		this.sampleTheta = useTheta && sampleTheta;
+
+		List<A> actionList = Arrays.asList(actionSet);
+		conditions = new ArrayList<C>(population.size());
+		actions = new int[population.size()];
+		votes = new double[population.size()];
+		fitness = new double[population.size()];
+
+		int i = 0;
+		for(Classifier<A, C> classifier : population){
+			conditions.add(classifier.getCondition().clone());
+			actions[i] = actionList.indexOf(classifier.getAction());
+			if(useTheta){
+				votes[i] = classifier.getTheta();
+			}
+			else{
+				votes[i] = classifier.getPrediction() * classifier.getFitness();
+				fitness[i] = classifier.getFitness();
+			}
+			i ++;
+		}
+	}
+
+	/**
+	 * @return The number of classifiers in this policy
+	 */
+	public int size(){
+		return actions.length;
+	}
+
+	/**
+	 * @return The condition of the classifier at the given position
+	 */
+	public C getCondition(int classifier){
+		return conditions.get(classifier);
+	}
+
+	/**
+	 * @return The position in the action set of the action of the classifier at the given position
+	 */
+	public int getActionIndex(int classifier){
+		return actions[classifier];
+	}
+
+	/**
+	 * @return The weighted vote of the classifier at the given position. Theta, or prediction * fitness
+	 */
+	public double getVote(int classifier){
+		return votes[classifier];
+	}
+
+	/**
+	 * @return The fitness of the classifier at the given position, or 0 when voting by theta
+	 */
+	public double getFitness(int classifier){
+		return fitness[classifier];
+	}
+
+	/**
+	 * @return Whether actions are chosen by summed theta rather than fitness weighted prediction
+	 */
+	public boolean usesTheta(){
+		return useTheta;
+	}
+
+	/**
+	 * @return Whether actions are sampled from the distribution of summed theta rather than the best taken
+	 */
+	public boolean samplesTheta(){
+		return sampleTheta;
+	}
+
+	/**
+	 * @return The number of actions that can be chosen
+	 */
+	public int getNumActions(){
+		return actionSet.length;
+	}
+
+	/**
+	 * @return The action at the given position in the action set
+	 */
+	public A getAction(int index){
+		return actionSet[index];
+	}
+
+	/**
+	 * Chooses an action in the given state as an XCS does when evaluated. Random if the state is
+	 * unmatched, or when sampling by theta.
+	 */
+	@Override
+	public A getAction(S state){
+		double[] probabilities = new double[actionSet.length];
+		getActionProbabilities(state, probabilities);
+		return actionSet[sample(probabilities)];
+	}
+
+	/**
+	 * Chooses the action of every given state, as getAction does. Each condition is tested
+	 * against a block of states in turn, rather than every condition against each state.
+	 * @param states The states to choose actions in
+	 * @param out Filled with the action chosen in each state, at the same positions
+	 */
+	public void getActions(S[] states, A[] out){
+		if(out.length < states.length)throw new IllegalArgumentException("Output is shorter than the states");
+
+		int numActions = actionSet.length;
+		double[] PA = new double[BATCH_SIZE * numActions];
+		double[] FSA = new double[BATCH_SIZE * numActions];
+		boolean[] matched = new boolean[BATCH_SIZE];
+		double[] values = new double[numActions];
+		double[] fitnessSums = new double[numActions];
+		double[] probabilities = new double[numActions];
+		for(int start = 0;start < states.length;start += BATCH_SIZE){
+			int end = Math.min(states.length, start + BATCH_SIZE);
+			Arrays.fill(PA, 0);
+			Arrays.fill(FSA, 0);
+			Arrays.fill(matched, false);
+			for(int i = 0;i < actions.length;i ++){
+				C condition = conditions.get(i);
+				for(int s = start;s < end;s ++){
+					if(condition.matchesState(states[s])){
+						int pos = (s - start) * numActions + actions[i];
+						PA[pos] += votes[i];
+						FSA[pos] += fitness[i];
+						matched[s - start] = true;
+					}
+				}
+			}
+
+			for(int s = start;s < end;s ++){
+				System.arraycopy(PA, (s - start) * numActions, values, 0, numActions);
+				System.arraycopy(FSA, (s - start) * numActions, fitnessSums, 0, numActions);
+				toProbabilities(values, fitnessSums, matched[s - start], probabilities);
+				out[s] = actionSet[sample(probabilities)];
+			}
+		}
+	}
+
+	/**
+	 * Finds the probability of choosing each action of the action set in the given state, as getAction does
+	 * @param state The state to choose an action in
+	 * @param probabilities Filled with the probability of each action, in the order of the action set
+	 */
+	public void getActionProbabilities(S state, double[] probabilities){
+		double[] values = new double[actionSet.length];
+		double[] FSA = new double[actionSet.length];
+		boolean matched = sumVotes(state, values, FSA);
+		toProbabilities(values, FSA, matched, probabilities);
+	}
+
+	@Override
+	public void getActionProbabilities(S state, A[] actions, double[] probabilities){
+		double[] own = new double[actionSet.length];
+		getActionProbabilities(state, own);
+		for(int i = 0;i < actions.length;i ++){
+			probabilities[i] = 0;
+			for(int a = 0;a < actionSet.length;a ++){
+				if(actionSet[a].equals(actions[i])){
+					probabilities[i] = own[a];
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the value of every action in the given state and chooses the best, without sampling
+	 * @param state The state to choose an action in
+	 * @param values Filled with the value of each action: its summed theta, or its fitness weighted
+	 * 			prediction (NaN if no matching classifier advocates it)
+	 * @return The position in the action set of the best action, or -1 if the state is unmatched
+	 */
+	public int chooseAction(S state, double[] values){
+		double[] FSA = new double[actionSet.length];
+		boolean matched = sumVotes(state, values, FSA);
+		return selectAction(values, FSA, matched, useTheta);
+	}
+
+	/**
+	 * Sums the votes and fitness of the matching classifiers of each action
+	 * @return Whether any classifier matches
+	 */
+	private boolean sumVotes(S state, double[] values, double[] FSA){
+		Arrays.fill(values, 0, actionSet.length, 0);
+		boolean matched = false;
+		for(int i = 0;i < actions.length;i ++){
+			if(conditions.get(i).matchesState(state)){
+				values[actions[i]] += votes[i];
+				FSA[actions[i]] += fitness[i];
+				matched = true;
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Turns the summed votes of a state into the probability of choosing each action
+	 */
+	private void toProbabilities(double[] values, double[] FSA, boolean matched, double[] probabilities){
+		int best = selectAction(values, FSA, matched, useTheta);
+		if(best == -1){
+			Arrays.fill(probabilities, 0, actionSet.length, 1.0 / actionSet.length);
+		}
+		else if(sampleTheta){
+			//As XCS.selectActionFromDistribution does with PredictionArray.fromMatchSetTheta
+			double sum = 0;
+			for(int i = 0;i < actionSet.length;i ++){
+				probabilities[i] = Math.exp(Math.max(-20, Math.min(20, values[i])));
+				sum += probabilities[i];
+			}
+			for(int i = 0;i < actionSet.length;i ++){
+				probabilities[i] /= sum;
+			}
+		}
+		else{
+			Arrays.fill(probabilities, 0, actionSet.length, 0);
+			probabilities[best] = 1;
+		}
+	}
+
+	/**
+	 * @return The position of an action drawn from the given probabilities
+	 */
+	private int sample(double[] probabilities){
+		double choicePoint = ThreadLocalRandom.current().nextDouble();
+		double sum = 0;
+		int last = 0;
+		for(int i = 0;i < actionSet.length;i ++){
+			if(probabilities[i] <= 0)continue;
+			sum += probabilities[i];
+			last = i;
+			if(sum > choicePoint)return i;
+		}
+		//Only reached through rounding
+		return last;
+	}
+
+	/**
+	 * Chooses the best action from the summed votes of the matching classifiers, without sampling
+	 * @param values The summed vote of each action. Replaced by the value of each action:
+	 * 			the summed theta, or the fitness weighted prediction (NaN if no classifier advocates it)
+	 * @param FSA The summed fitness of each action, unused when voting by theta
+	 * @param matched Whether any classifier matches the state
+	 * @param useTheta Whether to choose by summed theta rather than fitness weighted prediction
+	 * @return The position in the action set of the chosen action, or -1 if no matching classifier
+	 * 			advocates any action
+	 */
+	public static int selectAction(double[] values, double[] FSA, boolean matched, boolean useTheta){
+		int best = -1;
+		double bestValue = 0;
+		for(int i = 0;i < FSA.length;i ++){
+			if(!useTheta){
+				if(FSA[i] <= 0){
+					values[i] = Double.NaN;
+					continue;
+				}
+				values[i] /= FSA[i];
+			}
+			if(best == -1 || values[i] > bestValue){
+				best = i;
+				bestValue = values[i];
+			}
+		}
+
+		return matched ? best : -1;
+	}
+}
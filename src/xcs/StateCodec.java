@@ -0,0 +1,26 @@
+package xcs;
+
+/**
+ * Numbers the states of an environment, so that a value can be kept for every
+ * state in a dense table.
+ *
+ * @param <S> The type of state that is numbered
+ */
+public interface StateCodec<S extends State<?>> {
+	/**
+	 * @return The number of distinct states. Codes run from 0 to one less than this
+	 */
+	public long getStateCount();
+
+	/**
+	 * @param state The state to number
+	 * @return The code of the given state
+	 */
+	public long encode(S state);
+
+	/**
+	 * @param code The code of a state
+	 * @return The state with the given code
+	 */
+	public S decode(long code);
+}
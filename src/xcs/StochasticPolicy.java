@@ -0,0 +1,18 @@
+package xcs;
+
+/**
+ * A policy that may choose its actions at random, and can say how likely each action is.
+ * Lets evaluators work out the expected performance of a policy rather than sampling it.
+ *
+ * @param <S> The type of state this policy acts on
+ * @param <A> The type of actions this policy chooses
+ */
+public interface StochasticPolicy<S extends State<?>, A> extends Policy<S, A> {
+	/**
+	 * Finds the probability of choosing each of the given actions in the given state
+	 * @param state The current state
+	 * @param actions The actions to find the probabilities of
+	 * @param probabilities Filled with the probability of each action, at the same positions
+	 */
+	public void getActionProbabilities(S state, A[] actions, double[] probabilities);
+}
@@ -0,0 +1,70 @@
+package xcs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A set of classifiers bucketed by the number of wildcards in their conditions, for
+ * action set subsumption. A classifier can only be more general than classifiers with
+ * fewer wildcards, so the search for subsumers starts from the most general bucket and
+ * the search for subsumed classifiers only looks at less general buckets.
+ *
+ * The index is a snapshot: classifiers whose conditions change are not moved between buckets.
+ *
+ * @param <A> The type of actions of the classifiers
+ * @param <C> The type of condition of the classifiers
+ */
+public class SubsumptionIndex<A, C extends Condition<?, C>> {
+
+	/* The classifiers with each number of wildcards, indexed by wildcard count */
+	private final List<List<Classifier<A, C>>> buckets;
+
+	/**
+	 * @param classifiers The classifiers to index, in the order they are searched within a bucket
+	 */
+	public SubsumptionIndex(Collection<Classifier<A, C>> classifiers){
+		int maxWildcards = 0;
+		for(Classifier<A, C> classifier : classifiers){
+			maxWildcards = Math.max(maxWildcards, classifier.getNumWildcards());
+		}
+
+		buckets = new ArrayList<List<Classifier<A, C>>>(maxWildcards + 1);
+		for(int i = 0;i <= maxWildcards;i ++){
+			buckets.add(new ArrayList<Classifier<A, C>>());
+		}
+		for(Classifier<A, C> classifier : classifiers){
+			buckets.get(classifier.getNumWildcards()).add(classifier);
+		}
+	}
+
+	/**
+	 * Finds the most general classifier that is eligible to subsume others, that is
+	 * the first eligible classifier with the most wildcards
+	 * @return The most general eligible classifier, or null if none are eligible
+	 */
+	public Classifier<A, C> findMostGeneralSubsumer(){
+		for(int i = buckets.size() - 1;i >= 0;i --){
+			for(Classifier<A, C> classifier : buckets.get(i)){
+				if(classifier.couldSubsume())return classifier;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds every classifier in the index that the given classifier is more general than
+	 * @param general The classifier to test the others against
+	 * @return The classifiers that are less general than the given one
+	 */
+	public List<Classifier<A, C>> findSubsumedBy(Classifier<A, C> general){
+		List<Classifier<A, C>> subsumed = new ArrayList<Classifier<A, C>>();
+		int wildcards = Math.min(general.getNumWildcards(), buckets.size());
+		for(int i = 0;i < wildcards;i ++){
+			for(Classifier<A, C> classifier : buckets.get(i)){
+				if(general.isMoreGeneral(classifier))subsumed.add(classifier);
+			}
+		}
+		return subsumed;
+	}
+}
@@ -3,13 +3,22 @@ package xcs;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-
-import xcs.XCSConstants.UpdateMethod;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import xcs.XCSConstants.SelectionMethod;
 import xcs.stats.Snapshot;
 
 /**
@@ -34,12 +43,22 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	/* The last action set from the previous time step */
 	private Set<Classifier<A, C>> setAMinusOne = new HashSet<Classifier<A, C>>();
 
+	/* The states of the previous and current time steps and their match sets, kept up to date as classifiers
+	 * enter and leave the population so that the update of the next step need not match the state again */
+	private S preMatchState = null;
+	private Set<Classifier<A, C>> preMatchSet = null;
+	private S currentMatchState = null;
+	private Set<Classifier<A, C>> currentMatchSet = null;
+
 	/* The global timestamp */
 	private int timestamp = 1;
 
 	/* The set of classifier in the population */
 	private Set<Classifier<A, C>> population = new HashSet<Classifier<A, C>>();
 
+	/* An index over the conditions of the population for finding match sets, or null to scan the population */
+	private PopulationIndex<S, C, A> populationIndex;
+
 	/* The set of the discrete actions the system can take */
 	private A[] actionSet;
 
@@ -58,6 +77,37 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 
 	private final Random random = new Random();
 
+	/* The position of each action in actionSet */
+	private final Map<A, Integer> actionIndex = new HashMap<A, Integer>();
+
+	/* Per action sums over the match set last given to sumMatchSet */
+	private final double[] thetaSums;
+	private final double[] fitnessSums;
+	private final double[] predictionSums;
+	private final int[] actionCounts;
+
+	/* The normalized exponentials of thetaSums, as in PredictionArray.fromMatchSetTheta */
+	private final double[] actionProbabilities;
+
+	/* The classifiers of the match set last given to sumMatchSet, and the positions of their actions */
+	private Classifier<A, C>[] matchClassifiers;
+	private int[] matchActions;
+	private double[] matchFeatures;
+	private int matchSize;
+
+	/* The action set the GA is running on, and the numerosity summed up to and including each of them */
+	private Classifier<A, C>[] gaCandidates;
+	private int[] gaNumerositySums;
+
+	/* The update rule of the constants' UpdateMethod, chosen once when this XCS is constructed */
+	private final UpdateEngine engine;
+
+	/* The policy of the population when it was last published, read by the predict methods from any thread */
+	private volatile PopulationPolicy<S, C, A> publishedPolicy;
+
+	/* Worker threads shared by every XCS for evaluating populations in parallel. Created when first needed */
+	private static ExecutorService evaluationExecutor;
+
 	/**
 	 * Creates a new XCS choosing from the specified set of actions
 	 * and a default set of constants
@@ -72,9 +122,43 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	 * @param constants The parameters to use in this XCS
 	 * @param actions The action set to use in this XCS
 	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	public XCS(XCSConstants constants, A[] actions){
 		this.constants = constants;
 		this.actionSet = actions;
+
+		for(int i = 0;i < actions.length;i ++){
+			if(!actionIndex.containsKey(actions[i]))actionIndex.put(actions[i], i);
+		}
+		thetaSums = new double[actions.length];
+		fitnessSums = new double[actions.length];
+		predictionSums = new double[actions.length];
+		actionCounts = new int[actions.length];
+		actionProbabilities = new double[actions.length];
+		matchClassifiers = new Classifier[16];
+		matchActions = new int[16];
+		matchFeatures = new double[16];
+		gaCandidates = new Classifier[16];
+		gaNumerositySums = new int[16];
+
+		switch(constants.getUpdateMethod()){
+		case XCSMU:
+			engine = new XCSMUEngine();
+			break;
+		case NXCS:
+			engine = new NXCSEngine();
+			break;
+		case NXCS2:
+			engine = new NXCS2Engine();
+			break;
+		case RXCS:
+			engine = new RXCSEngine();
+			break;
+		default:
+			engine = new NormalEngine();
+			break;
+		}
+		publishedPolicy = toPolicy();
 	}
 
 	/**
@@ -115,6 +199,126 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 		return performance;
 	}
 
+	/**
+	 * Works out exactly the reward the current population expects on the given environment, in
+	 * parallel. Each state is weighted equally, and the reward of each action is weighted by its
+	 * probability under runXCSEvaluation: sampled by theta for NXCS and RXCS, and uniform over
+	 * the action set in unmatched states.
+	 * @param env The environment to evaluate on
+	 * @return The expected reward of a random state, which
+	 * 			runXCSEvaluationSingleStep(env, n) / n estimates
+	 * @throws IllegalArgumentException If the environment has too many states to enumerate
+	 */
+	public double runXCSEvaluationExhaustive(EnumerableEnvironment<S, A> env){
+		List<S> states = env.enumerateStates();
+		if(states == null)throw new IllegalArgumentException("Environment has too many states to enumerate");
+		return evaluateStates(env, states, toPolicy());
+	}
+
+	/**
+	 * Scores the given policy on every state of the given environment, in parallel. A
+	 * StochasticPolicy is scored by its expected reward in each state; any other policy
+	 * chooses a single action in each state, so a random policy gives a sampled score.
+	 * @param env The environment to evaluate on
+	 * @param policy The policy to evaluate, such as one from toPolicy or freeze
+	 * @return The average reward over every state
+	 * @throws IllegalArgumentException If the environment has too many states to enumerate
+	 */
+	public double runXCSEvaluationExhaustive(EnumerableEnvironment<S, A> env, Policy<S, A> policy){
+		List<S> states = env.enumerateStates();
+		if(states == null)throw new IllegalArgumentException("Environment has too many states to enumerate");
+		return evaluateStates(env, states, policy);
+	}
+
+	/**
+	 * Averages the reward of the given policy over the given states, splitting them between threads
+	 */
+	private double evaluateStates(final EnumerableEnvironment<S, A> env, final List<S> states, final Policy<S, A> policy){
+		if(states.isEmpty())return 0;
+
+		ExecutorService executor = getEvaluationExecutor();
+		int threads = Math.min(states.size(), Runtime.getRuntime().availableProcessors());
+		List<Future<Double>> results = new ArrayList<Future<Double>>(threads);
+		for(int t = 0;t < threads;t ++){
+			final int start = (int)((long)states.size() * t / threads);
+			final int end = (int)((long)states.size() * (t + 1) / threads);
+			results.add(executor.submit(new Callable<Double>(){
+				@Override
+				public Double call(){
+					double reward = 0;
+					if(policy instanceof StochasticPolicy){
+						StochasticPolicy<S, A> stochastic = (StochasticPolicy<S, A>)policy;
+						double[] probabilities = new double[actionSet.length];
+						for(int i = start;i < end;i ++){
+							S state = states.get(i);
+							stochastic.getActionProbabilities(state, actionSet, probabilities);
+							for(int a = 0;a < actionSet.length;a ++){
+								if(probabilities[a] > 0)reward += probabilities[a] * env.getReward(state, actionSet[a]);
+							}
+						}
+					}
+					else{
+						for(int i = start;i < end;i ++){
+							S state = states.get(i);
+							reward += env.getReward(state, policy.getAction(state));
+						}
+					}
+					return reward;
+				}
+			}));
+		}
+
+		double performance = 0;
+		for(Double result : awaitAll(results, "evaluating population")){
+			performance += result;
+		}
+
+		return performance / states.size();
+	}
+
+	/**
+	 * Waits for every task given to the evaluation executor
+	 * @param results The pending results of the tasks
+	 * @param task What the tasks are doing, for error messages
+	 * @return The results of the tasks, in order
+	 */
+	private static <T> List<T> awaitAll(List<Future<T>> results, String task){
+		List<T> values = new ArrayList<T>(results.size());
+		try{
+			for(Future<T> result : results){
+				values.add(result.get());
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted " + task, e);
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException)throw (RuntimeException)e.getCause();
+			throw new IllegalStateException("Failed " + task, e.getCause());
+		}
+		return values;
+	}
+
+	/**
+	 * @return The worker threads shared by every XCS for evaluating populations in parallel
+	 */
+	private static synchronized ExecutorService getEvaluationExecutor(){
+		if(evaluationExecutor == null){
+			evaluationExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory(){
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "XCS Evaluation " + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return evaluationExecutor;
+	}
+
 	public int runXCSEvaluationMultiStep(Environment<S, A> env, int finalStateBound){
 		int timestamp = 1;
 
@@ -133,32 +337,102 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 
 	private double runXCSEvaluation(Environment<S, A> env, S state){
 		setM = findMatchClassifiersInPopulation(state);
-		PredictionArray<A> PA = generatePredictionArray(setM);
-
-		UpdateMethod update = constants.getUpdateMethod();
-
+		//With nothing matched every method acts at random, as PopulationPolicy does
 		A act = null;
-		if(update.equals(UpdateMethod.NXCS) || update.equals(UpdateMethod.RXCS)){
-			act = selectActionFromDistribution(PA);
-		}
-		else{
-			act = PA.getActionDeterministic();
-		}
-
+		if(!setM.isEmpty())act = engine.selectEvaluationAction(engine.predictionArray(setM));
 		if(act == null)act = actionSet[(int)(Math.random() * actionSet.length)];
 
 		return env.getReward(state, act);
 	}
 
+	/**
+	 * Evaluates the current policy on an environment that implements PolicyEvaluator
+	 * @param env The environment, which must implement PolicyEvaluator for the same states and actions
+	 * @return The exact performance of the current policy
+	 */
+	@SuppressWarnings("unchecked")
+	private double evaluateExactly(Environment<S, A> env){
+		return ((PolicyEvaluator<S, A>)env).evaluate(toPolicy());
+	}
+
+	/**
+	 * Sets the index used to find match sets, instead of testing every classifier in the population.
+	 * The index is cleared and filled with the current population, and from then on is kept
+	 * in step with the population by this XCS.
+	 * @param index The index to use, or null to scan the population
+	 */
+	public void setPopulationIndex(PopulationIndex<S, C, A> index){
+		populationIndex = index;
+		if(index != null){
+			index.clear();
+			for(Classifier<A, C> classifier : population){
+				index.add(classifier);
+			}
+		}
+	}
+
 	public List<Snapshot> getStats(){
 		return stats;
 	}
 
+	/**
+	 * Takes a copy of the policy of the current population, choosing actions as runXCSEvaluation
+	 * does, which can be evaluated in parallel while this XCS carries on learning
+	 * @return The policy of the current population
+	 */
+	public PopulationPolicy<S, C, A> toPolicy(){
+		return new PopulationPolicy<S, C, A>(actionSet, population, engine.usesTheta(), engine.samplesEvaluationActions());
+	}
+
+	/**
+	 * Compiles the greedy policy of the current population into a lookup, so that choosing an action
+	 * does not match the population. Caches decisions as states are seen; see freeze(StateCodec)
+	 * for small state spaces.
+	 * @return The compiled policy of the current population
+	 */
+	public FrozenPolicy<S, C, A> freeze(){
+		return new FrozenPolicy<S, C, A>(toPolicy());
+	}
+
+	/**
+	 * Compiles the greedy policy of the current population into a lookup, so that choosing an action
+	 * does not match the population. If the codec numbers at most FrozenPolicy.MAX_TABLE_STATES states,
+	 * the decision of every state is filled into a table in parallel, otherwise decisions are cached as
+	 * states are seen.
+	 * @param codec Numbers the states of the environment
+	 * @return The compiled policy of the current population
+	 */
+	public FrozenPolicy<S, C, A> freeze(StateCodec<S> codec){
+		final FrozenPolicy<S, C, A> frozen = new FrozenPolicy<S, C, A>(toPolicy(), codec);
+		if(!frozen.hasTable())return frozen;
+
+		final int size = frozen.getTableSize();
+		ExecutorService executor = getEvaluationExecutor();
+		int threads = Math.max(1, Math.min(size, Runtime.getRuntime().availableProcessors()));
+		List<Future<Void>> results = new ArrayList<Future<Void>>(threads);
+		for(int t = 0;t < threads;t ++){
+			final int start = (int)((long)size * t / threads);
+			final int end = (int)((long)size * (t + 1) / threads);
+			results.add(executor.submit(new Callable<Void>(){
+				@Override
+				public Void call(){
+					frozen.fill(start, end);
+					return null;
+				}
+			}));
+		}
+		awaitAll(results, "freezing population");
+
+		return frozen;
+	}
+
 	public void runXCSMultistep(Environment<S, A> env, int finalStateBound, int logCount){
 		boolean logged = true;
 		int finalStateCount = 0;
 		timestamp = 1;
 		population = new HashSet<Classifier<A, C>>();
+		if(populationIndex != null)populationIndex.clear();
+		forgetMatchSets();
 		setM = new HashSet<Classifier<A, C>>();
 		setA = new HashSet<Classifier<A, C>>();
 		setAMinusOne = new HashSet<Classifier<A, C>>();
@@ -167,7 +441,13 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 
 		while(finalStateCount <= finalStateBound){
 			if(finalStateCount % logCount == 0 && !logged){
-				double result = runXCSEvaluationMultiStep(env, 200) / 200.0;
+				double result;
+				if(constants.useExactEvaluation() && env instanceof PolicyEvaluator){
+					result = evaluateExactly(env);
+				}
+				else{
+					result = runXCSEvaluationMultiStep(env, 200) / 200.0;
+				}
 				System.out.printf("Final State %d reached with Algorithm %s. Logged Value: %3.2f%n", finalStateCount, constants.getUpdateMethod(), result);
 				stats.add(new Snapshot(finalStateCount, population, result, constants.getStateDim()));
 				logged = true;
@@ -182,6 +462,7 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 			++timestamp;
 			runXCS(env, state);
 		}
+		publishPolicy();
 	}
 
 	/**
@@ -195,19 +476,85 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	public void runXCSSingleStep(Environment<S, A> env, int iteration, int logCount){
 		//Initialise
 		population = new HashSet<Classifier<A, C>>();
+		if(populationIndex != null)populationIndex.clear();
+		forgetMatchSets();
 		setM = new HashSet<Classifier<A, C>>();
 		setA = new HashSet<Classifier<A, C>>();
 		setAMinusOne = new HashSet<Classifier<A, C>>();
 		initialClassifierID = 0;
 		stats.clear();
 
+		//The states to evaluate exactly on, if the environment can enumerate them
+		List<S> exactStates = null;
+		if(constants.useExactEvaluation() && env instanceof EnumerableEnvironment){
+			exactStates = ((EnumerableEnvironment<S, A>)env).enumerateStates();
+		}
+
 		//Main Loop
 		for(timestamp = 1;timestamp <= iteration;timestamp ++){
 			runXCS(env, env.getState());
 			if(timestamp % logCount == 0){
-				stats.add(new Snapshot(timestamp, population, runXCSEvaluationSingleStep(env, 200) / 200, constants.getStateDim()));
+				double result;
+				if(exactStates != null){
+					result = evaluateStates((EnumerableEnvironment<S, A>)env, exactStates, toPolicy());
+				}
+				else{
+					result = runXCSEvaluationSingleStep(env, 200) / 200;
+				}
+				stats.add(new Snapshot(timestamp, population, result, constants.getStateDim()));
 			}
 		}
+		publishPolicy();
+	}
+
+	/**
+	 * Publishes a copy of the policy of the current population for the predict methods. Runs publish
+	 * their final population when they finish; call this from the thread that is learning to publish
+	 * one sooner. Until the first run finishes, the empty population is published.
+	 */
+	public void publishPolicy(){
+		publishedPolicy = toPolicy();
+	}
+
+	/**
+	 * Chooses an action in the given state with the published policy, as runXCSEvaluation does:
+	 * the action with the highest prediction, sampled by theta for NXCS and RXCS, and random if no
+	 * classifier matches. Safe to call from many threads at once, including while this XCS is
+	 * learning, as it does not touch the population.
+	 * @param state The state to choose an action in
+	 * @return The action chosen
+	 */
+	public A predict(S state){
+		return publishedPolicy.getAction(state);
+	}
+
+	/**
+	 * Chooses an action in each of the given states with the published policy, as predict does, matching
+	 * each condition against blocks of states at once. Safe to call from many threads at once.
+	 * @param states The states to choose actions in
+	 * @param out Filled with the action chosen in each state, at the same positions
+	 */
+	public void predictBatch(S[] states, A[] out){
+		publishedPolicy.getActions(states, out);
+	}
+
+	/**
+	 * Finds the value of every action in the given state under the published policy. Safe to call
+	 * from many threads at once.
+	 * @param state The state to evaluate
+	 * @return The summed theta of each action, or the fitness weighted prediction of each action
+	 * 			advocated by a matching classifier, depending on the UpdateMethod
+	 */
+	public PredictionArray<A> predictArray(S state){
+		PopulationPolicy<S, C, A> policy = publishedPolicy;
+		double[] values = new double[actionSet.length];
+		policy.chooseAction(state, values);
+
+		PredictionArray<A> PA = new PredictionArray<A>();
+		for(int i = 0;i < values.length;i ++){
+			if(!Double.isNaN(values[i]))PA.addPrediction(actionSet[i], values[i]);
+		}
+		return PA;
 	}
 
 	private void runXCS(Environment<S, A> env, S state){
@@ -219,15 +566,9 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 		}
 		else{
 			setM = generateMatchSet(state);
-			PA = generatePredictionArray(setM);
-
-			UpdateMethod method = constants.getUpdateMethod();
-			if(method.equals(UpdateMethod.NXCS) || method.equals(UpdateMethod.RXCS) || method.equals(UpdateMethod.NXCS2)){
-				act = selectActionFromDistribution(PA);
-			}
-			else{
-				act = selectBestAction(PA);
-			}
+			trackMatchSet(state, setM);
+			PA = engine.predictionArray(setM);
+			act = engine.selectAction(PA);
 			setA = generateActionSet(setM, act);
 		}
 
@@ -237,30 +578,10 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 				P = preRho;
 			}
 			else{
-				UpdateMethod method = constants.getUpdateMethod();
-				if(method.equals(UpdateMethod.NXCS) || method.equals(UpdateMethod.RXCS) || method.equals(UpdateMethod.NXCS2)){
-					P = preRho + constants.getGamma() * valueFunctionEstimation(setM);
-				}
-				else{
-					P = preRho + constants.getGamma() * PA.getPrediction(PA.getActionDeterministic());
-				}
+				P = preRho + constants.getGamma() * engine.value(setM, PA);
 			}
 
-			switch(constants.getUpdateMethod()){
-			case NXCS:
-			case NXCS2:
-				setAMinusOne = updateSetNXCS(preState, preAct, P);
-				break;
-			case RXCS:
-				if(!state.equals(preState))setAMinusOne = updateSetRXCS(preState, preAct, P);
-				break;
-			case XCSMU:
-				setAMinusOne = updateSetXCSMU(setAMinusOne, P);
-				break;
-			case NORMAL:
-				setAMinusOne = updateSet(setAMinusOne, P);
-				break;
-			}
+			setAMinusOne = engine.update(setAMinusOne, state, P);
 			runGA(setAMinusOne, preState);
 		}
 
@@ -268,6 +589,46 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 		preAct = act;
 		setAMinusOne = setA;
 		preState = state;
+		//The current match set is kept for the update of the next step
+		preMatchState = currentMatchState;
+		preMatchSet = currentMatchSet;
+		currentMatchState = null;
+		currentMatchSet = null;
+	}
+
+	/**
+	 * Starts keeping the match set of the state of the current time step up to date. Classifiers
+	 * in it that have already left the population, for instance deleted while covering, are dropped
+	 */
+	private void trackMatchSet(S state, Set<Classifier<A, C>> setM){
+		currentMatchState = state;
+		currentMatchSet = new HashSet<Classifier<A, C>>();
+		for(Classifier<A, C> classifier : setM){
+			if(population.contains(classifier))currentMatchSet.add(classifier);
+		}
+	}
+
+	private void forgetMatchSets(){
+		preMatchState = null;
+		preMatchSet = null;
+		currentMatchState = null;
+		currentMatchSet = null;
+	}
+
+	/**
+	 * Adds a classifier that has entered the population to the kept match sets it matches
+	 */
+	private void addToMatchSets(Classifier<A, C> classifier){
+		if(preMatchSet != null && stateClassifierMatch(preMatchState, classifier))preMatchSet.add(classifier);
+		if(currentMatchSet != null && stateClassifierMatch(currentMatchState, classifier))currentMatchSet.add(classifier);
+	}
+
+	/**
+	 * Removes a classifier that has left the population from the kept match sets
+	 */
+	private void removeFromMatchSets(Classifier<A, C> classifier){
+		if(preMatchSet != null)preMatchSet.remove(classifier);
+		if(currentMatchSet != null)currentMatchSet.remove(classifier);
 	}
 
 	/**
@@ -280,7 +641,12 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	 * @return A set of classifiers that match the given state
 	 */
 	private Set<Classifier<A, C>> generateMatchSet(S state){
-		setM = findMatchClassifiersInPopulation(state);
+		if(preMatchSet != null && state == preMatchState){
+			setM = new HashSet<Classifier<A, C>>(preMatchSet);
+		}
+		else{
+			setM = findMatchClassifiersInPopulation(state);
+		}
 		while(coveredActions(setM).size() < constants.getThetaNma()){
 			Classifier<A, C> cl = generateCoveringClassifier(setM, state);
 			if(cl == null)break;
@@ -325,6 +691,17 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	 * @param classifier The classifier to add
 	 */
 	private void insertInPopulation(Classifier<A, C> classifier){
+		if(populationIndex != null){
+			Classifier<A, C> cl = populationIndex.find(classifier.getCondition(), classifier.getAction());
+			if(cl != null){
+				cl.setNum(cl.getNum() + 1);
+			}
+			else{
+				addToPopulation(classifier);
+			}
+			return;
+		}
+
 		for(Classifier<A, C> cl : population){
 			if(conditionConditionMatch(classifier, cl) && classifier.getAction().equals(cl.getAction())){
 				cl.setNum(cl.getNum() + 1);
@@ -377,23 +754,10 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 			}
 		}
 
-		if(toDel != null)population.remove(toDel);
-	}
-
-	/**
-	 * Generates an array of 'best guesses' as to the payoff of each action
-	 * advocated for by a Classifier<A, C> in the given match set.
-	 * Reference: Page 8 'An Algorithmic Description of XCS'
-	 * @param setM The current match set
-	 * @return The generated prediction array
-	 */
-	private PredictionArray<A> generatePredictionArray(Set<Classifier<A, C>> setM){
-		UpdateMethod method = constants.getUpdateMethod();
-		if(method.equals(UpdateMethod.NXCS) || method.equals(UpdateMethod.RXCS) || method.equals(UpdateMethod.NXCS2)){
-			return PredictionArray.fromMatchSetTheta(actionSet, setM);
-		}
-		else{
-			return PredictionArray.fromMatchSetPrediction(actionSet, setM);
+		if(toDel != null){
+			population.remove(toDel);
+			if(populationIndex != null)populationIndex.remove(toDel);
+			removeFromMatchSets(toDel);
 		}
 	}
 
@@ -448,13 +812,70 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	}
 
 	/**
-	 * Generates a prediction array based on the given match set and then normalises
-	 * it so that the sum of the values in the array is 1
-	 * @param setM The match set to generate a prediction array from
-	 * @return The normalised prediction array
+	 * Walks the given match set once, accumulating the theta, fitness and prediction * fitness
+	 * of each action and recording the classifiers with the positions of their actions.
+	 * Then normalizes the theta sums into actionProbabilities.
+	 * @param setM The match set to sum
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void sumMatchSet(Set<Classifier<A, C>> setM){
+		Arrays.fill(thetaSums, 0);
+		Arrays.fill(fitnessSums, 0);
+		Arrays.fill(predictionSums, 0);
+		Arrays.fill(actionCounts, 0);
+		if(matchClassifiers.length < setM.size()){
+			int capacity = Math.max(setM.size(), matchClassifiers.length * 2);
+			matchClassifiers = new Classifier[capacity];
+			matchActions = new int[capacity];
+			matchFeatures = new double[capacity];
+		}
+
+		matchSize = 0;
+		for(Classifier<A, C> classifier : setM){
+			int action = actionIndex.get(classifier.getAction());
+			double fitness = classifier.getFitness();
+			thetaSums[action] += classifier.getTheta();
+			fitnessSums[action] += fitness;
+			predictionSums[action] += classifier.getPrediction() * fitness;
+			actionCounts[action] ++;
+			matchClassifiers[matchSize] = classifier;
+			matchActions[matchSize ++] = action;
+		}
+
+		double sum = 0;
+		for(int i = 0;i < actionProbabilities.length;i ++){
+			double theta = Math.max(-20, Math.min(20, thetaSums[i]));
+			actionProbabilities[i] = Math.exp(theta);
+			sum += actionProbabilities[i];
+		}
+		for(int i = 0;i < actionProbabilities.length;i ++){
+			actionProbabilities[i] /= sum;
+		}
+	}
+
+	/**
+	 * @return The classifiers of the match set last given to sumMatchSet with the action at the given position
+	 */
+	private Set<Classifier<A, C>> summedActionSet(int action){
+		Set<Classifier<A, C>> matches = new HashSet<Classifier<A, C>>();
+		for(int i = 0;i < matchSize;i ++){
+			if(matchActions[i] == action)matches.add(matchClassifiers[i]);
+		}
+		return matches;
+	}
+
+	/**
+	 * @return The value of the match set last given to sumMatchSet: the fitness weighted prediction of each action,
+	 * weighted by the probability of choosing that action
 	 */
-	private PredictionArray<A> generateNormalizedPredictionArray(Set<Classifier<A, C>> setM){
-		return generatePredictionArray(setM).normalize();
+	private double summedValue(){
+		double ret = 0;
+		for(int i = 0;i < actionCounts.length;i ++){
+			if(actionCounts[i] > 0){
+				ret += actionProbabilities[i] * predictionSums[i] / fitnessSums[i];
+			}
+		}
+		return ret;
 	}
 
 	/**
@@ -487,23 +908,8 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	 * @return A
 	 */
 	private double valueFunctionEstimation(Set<Classifier<A, C>> setM){
-		PredictionArray<A> PA = generateNormalizedPredictionArray(setM);
-		double ret = 0;
-		for(int i = 0;i < actionSet.length;i ++){
-			Set<Classifier<A, C>> setAA = generateActionSet(setM, actionSet[i]);
-			if(setAA.size() > 0){
-				double fitnessSum = 0;
-				double predictionSum = 0;
-				for(Classifier<A, C> classifier : setAA){
-					fitnessSum += classifier.getFitness();
-					predictionSum += classifier.getPrediction() * classifier.getFitness();
-				}
-
-				ret += PA.getPrediction(actionSet[i]) * predictionSum / fitnessSum;
-			}
-		}
-
-		return ret;
+		sumMatchSet(setM);
+		return summedValue();
 	}
 
 	private Set<Classifier<A, C>> updateSetXCSMU(Set<Classifier<A, C>> setA, double P){
@@ -557,9 +963,11 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 
 	private Set<Classifier<A, C>> updateSetRXCS(S preState, A act, double P){
 		Set<Classifier<A, C>> setMPrev = generateMatchSet(preState);
-		double deltaT = P - valueFunctionEstimation(setMPrev);
+		sumMatchSet(setMPrev);
+		double deltaT = P - summedValue();
+		int actIndex = actionIndex.get(act);
 		double numSum = 0;
-		Set<Classifier<A, C>> setAPrev = generateActionSet(setMPrev, act);
+		Set<Classifier<A, C>> setAPrev = summedActionSet(actIndex);
 		for(Classifier<A, C> classifier : setAPrev){
 			numSum += classifier.getNum();
 		}
@@ -570,7 +978,8 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 
 		updateFitness(setAPrev);
 
-		double actProb = generateNormalizedPredictionArray(setMPrev).getPrediction(act);
+		//Thetas are not changed by the updates above, so the probabilities still hold
+		double actProb = actionProbabilities[actIndex];
 		for(Classifier<A, C> classifier : setAPrev){
 			classifier.setTheta(classifier.getTheta() + constants.getOmega() * deltaT * (actProb - actProb * actProb));
 		}
@@ -584,17 +993,21 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	}
 
 	/**
-	 * Updates the set according to the Natural XCS algorithm
+	 * Updates the set according to the Natural XCS algorithm, changing the thetas of the match set
+	 * with the rule of the given engine
+	 * @param engine The engine of the NXCS variant being run
 	 * @param state The current state with which to update the set
 	 * @param act The action to be performed in the current state
 	 * @param P The adjusted reward for executing the given action
 	 * @return The action set generated from this updating
 	 */
-	private Set<Classifier<A, C>> updateSetNXCS(S state, A act, double P){
+	private Set<Classifier<A, C>> updateSetNXCS(NXCSEngine engine, S state, A act, double P){
 		Set<Classifier<A, C>> setM = generateMatchSet(state);
-		double deltaT = (P - valueFunctionEstimation(setM));
+		sumMatchSet(setM);
+		double deltaT = (P - summedValue());
 
-		Set<Classifier<A, C>> setA = generateActionSet(setM, preAct);
+		int actIndex = actionIndex.get(act);
+		Set<Classifier<A, C>> setA = summedActionSet(actIndex);
 
 		//Update parameters
 		double numSum = 0;
@@ -608,44 +1021,29 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 
 		updateFitness(setA);
 
-		//Update Thetas of the match set
-		PredictionArray<A> reward = generateNormalizedPredictionArray(setM);
-		Classifier<A, C>[] setMArray = toArray(setM);
-
-
+		//Update Thetas of the match set. Thetas are not changed by the updates above, so the probabilities still hold
 		double dot = 0;
-		double[] stateFeatures = new double[setM.size()];
-		for(int i = 0;i < stateFeatures.length;i ++){
-			Classifier<A, C> classifier = setMArray[i];
-			if(classifier.getAction().equals(act)){
-				stateFeatures[i] = 1 - reward.getPrediction(classifier.getAction());
-			}
-			else{
-				stateFeatures[i] = -reward.getPrediction(classifier.getAction());
-			}
-			dot += (classifier.getTheta() - classifier.getW()) * Math.pow(stateFeatures[i], 2);
+		for(int i = 0;i < matchSize;i ++){
+			Classifier<A, C> classifier = matchClassifiers[i];
+			int action = matchActions[i];
+			double feature = (action == actIndex ? 1 : 0) - actionProbabilities[action];
+			matchFeatures[i] = feature;
+			dot += (classifier.getTheta() - classifier.getW()) * feature * feature;
 		}
 
-
-		for(int i = 0;i < stateFeatures.length;i ++){
-			Classifier<A, C> classifier = setMArray[i];
+		double step = constants.getOmega() * deltaT;
+		for(int i = 0;i < matchSize;i ++){
+			Classifier<A, C> classifier = matchClassifiers[i];
 			classifier.setW(classifier.getTheta());
-			if(constants.getUpdateMethod().equals(XCSConstants.UpdateMethod.NXCS)){
-				classifier.setTheta(classifier.getTheta() + constants.getOmega() * deltaT * stateFeatures[i]);
-			}
-			else{
-				double mod = 0.1 * (classifier.getTheta() - classifier.getW()) + constants.getOmega() * deltaT * stateFeatures[i] - constants.getOmega() * dot;
-				classifier.setTheta(classifier.getTheta() + mod);
-			}
+			engine.updateTheta(classifier, step * matchFeatures[i], dot);
 		}
 
-
 		//Return either the subsumped action set or the standard action set
 		if(constants.doActionSetSubsumption()){
-			return actionSetSubsumption(generateActionSet(setM, act));
+			return actionSetSubsumption(setA);
 		}
 		else{
-			return generateActionSet(setM, act);
+			return setA;
 		}
 	}
 
@@ -712,7 +1110,7 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	 * @param currentActionSet The current action set in this timestep
 	 * @param state The current state from the environment
 	 */
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	private void runGA(Set<Classifier<A, C>> currentActionSet, S state){
 		double averageTimeStamp = 0.00;
 		int numSum = 0;
@@ -728,12 +1126,34 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 			return;
 		}
 
+		//The action set is laid out for tournaments in the walk that updates the time stamps anyway
+		boolean tournament = constants.getSelectionMethod() == SelectionMethod.TOURNAMENT;
+		if(tournament && gaCandidates.length < currentActionSet.size()){
+			int capacity = Math.max(currentActionSet.size(), gaCandidates.length * 2);
+			gaCandidates = new Classifier[capacity];
+			gaNumerositySums = new int[capacity];
+		}
+		int candidateCount = 0;
+		int candidateNumSum = 0;
 		for(Classifier<A, C> classifier : currentActionSet){
 			classifier.setTimeStamp(timestamp);
+			if(tournament && classifier.getNum() > 0){
+				candidateNumSum += classifier.getNum();
+				gaCandidates[candidateCount] = classifier;
+				gaNumerositySums[candidateCount ++] = candidateNumSum;
+			}
 		}
 
-		Classifier<A, C> parent1 = selectOffspring(currentActionSet);
-		Classifier<A, C> parent2 = selectOffspring(currentActionSet);
+		Classifier<A, C> parent1;
+		Classifier<A, C> parent2;
+		if(tournament){
+			parent1 = selectOffspringTournament(candidateCount, candidateNumSum);
+			parent2 = selectOffspringTournament(candidateCount, candidateNumSum);
+		}
+		else{
+			parent1 = selectOffspring(currentActionSet);
+			parent2 = selectOffspring(currentActionSet);
+		}
 
 		if(parent1 == null || parent2 == null || parent1.equals(parent2)){
 			//There are not enough parents in the set.
@@ -822,6 +1242,40 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 		return findRandomElementInSet(setA);
 	}
 
+	/**
+	 * Chooses a Classifier from the action set laid out in gaCandidates by tournament, with the
+	 * intention that the Classifier will be used to generate a child Classifier.
+	 *
+	 * The tournament is a fraction tournamentSize of the micro-classifiers of the action set, drawn
+	 * at random with replacement, so each classifier is drawn in proportion to its numerosity. The
+	 * one with the highest fitness per micro-classifier wins. Each draw is a binary search of the
+	 * numerosity sums, so this takes time proportional to the tournament size, times its logarithm.
+	 *
+	 * @param count The number of classifiers in gaCandidates
+	 * @param numSum The numerosity of the action set, the last of gaNumerositySums
+	 * @return The winner of the tournament, or null if there are no candidates
+	 */
+	private Classifier<A, C> selectOffspringTournament(int count, int numSum){
+		if(count == 0 || numSum <= 0)return null;
+
+		int size = Math.max(1, (int)Math.ceil(constants.getTournamentSize() * numSum));
+		Classifier<A, C> winner = null;
+		double bestFitness = 0;
+		for(int i = 0;i < size;i ++){
+			//The first classifier whose numerosity sum passes the drawn micro-classifier. The sums strictly increase
+			int position = Arrays.binarySearch(gaNumerositySums, 0, count, random.nextInt(numSum) + 1);
+			if(position < 0)position = -position - 1;
+			Classifier<A, C> candidate = gaCandidates[position];
+			double fitness = candidate.getFitness() / candidate.getNum();
+			if(winner == null || fitness > bestFitness){
+				winner = candidate;
+				bestFitness = fitness;
+			}
+		}
+
+		return winner;
+	}
+
 	/**
 	 * Mutates the given classifier according to the given state by flipping
 	 * condition chars and potentially choosing a new action to perform
@@ -849,42 +1303,31 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	private Set<Classifier<A, C>> actionSetSubsumption(Set<Classifier<A, C>> setAA){
 		if(setAA.size() <= 1)return setAA;
 
-		Classifier<A, C>[] data = toArray(setA);
-
-		if(constants.useModifiedActionSetSubsumption()){
-			//Sort the set by the number of wildcards.
-			Arrays.sort(data, new Comparator<Classifier<A, C>>(){
-				@Override
-				public int compare(Classifier<A, C> c1, Classifier<A, C> c2){
-					int c1WildcardCount = c1.getNumWildcards();
-					int c2WildcardCount = c2.getNumWildcards();
-
-					if(c1WildcardCount == c2WildcardCount)return 0;
-					else if(c1WildcardCount > c2WildcardCount)return -1;
-					else return 1;
-				}
-			});
-		}
+		SubsumptionIndex<A, C> index = new SubsumptionIndex<A, C>(setAA);
 
 		Classifier<A, C> cl = null;
 
-		//Find the most general classifier that is eligible to subsume
-		for(Classifier<A, C> c : data){
-			if(c.couldSubsume()){
-				if(cl == null || c.isMoreGeneral(cl)){
-					cl = c;
+		if(constants.useModifiedActionSetSubsumption()){
+			//The first eligible classifier with the most wildcards
+			cl = index.findMostGeneralSubsumer();
+		}
+		else{
+			//Find the most general classifier that is eligible to subsume
+			for(Classifier<A, C> c : setAA){
+				if(c.couldSubsume()){
+					if(cl == null || c.isMoreGeneral(cl)){
+						cl = c;
+					}
 				}
 			}
 		}
 
 		//Subsume classifiers into cl
 		if(cl != null){
-			for(Classifier<A, C> c : data){
-				if(cl.isMoreGeneral(c)){
-					cl.setNum(cl.getNum() + c.getNum());
-					deleteFromPopulation(c.getID());
-					setAA.remove(c);
-				}
+			for(Classifier<A, C> c : index.findSubsumedBy(cl)){
+				cl.setNum(cl.getNum() + c.getNum());
+				deleteFromPopulation(c.getID());
+				setAA.remove(c);
 			}
 		}
 
@@ -912,6 +1355,8 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 		}
 
 		population.add(classifier);
+		if(populationIndex != null)populationIndex.add(classifier);
+		addToMatchSets(classifier);
 	}
 
 	/**
@@ -921,8 +1366,13 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	 */
 	private void deleteFromPopulation(long id){
 		Iterator<Classifier<A, C>> popIter = population.iterator();
-		for(Classifier<A, C> classifier = popIter.next();popIter.hasNext();classifier = popIter.next()){
-			if(classifier.getID() == id)popIter.remove();
+		while(popIter.hasNext()){
+			Classifier<A, C> classifier = popIter.next();
+			if(classifier.getID() == id){
+				popIter.remove();
+				if(populationIndex != null)populationIndex.remove(classifier);
+				removeFromMatchSets(classifier);
+			}
 		}
 	}
 	/**
@@ -977,6 +1427,8 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 	 * @return
 	 */
 	private Set<Classifier<A, C>> findMatchClassifiersInPopulation(S state){
+		if(populationIndex != null)return populationIndex.match(state);
+
 		Set<Classifier<A, C>> matches = new HashSet<Classifier<A, C>>();
 		for(Classifier<A, C> classifier : population){
 			//If the classifier matches, add it to the set
@@ -1060,4 +1512,174 @@ public class XCS<S extends State<C>, C extends Condition<S, C>, A> {
 		target = data.toArray(target);
 		return target;
 	}
+
+	/**
+	 * The parts of a learning step that depend on the UpdateMethod. Each method has its own engine,
+	 * chosen when the XCS is constructed, so a step calls into it without checking the method.
+	 */
+	private abstract class UpdateEngine {
+		/**
+		 * @return The prediction array of the given match set that actions are chosen from
+		 */
+		abstract PredictionArray<A> predictionArray(Set<Classifier<A, C>> setM);
+
+		/**
+		 * @return The action to perform while learning
+		 */
+		abstract A selectAction(PredictionArray<A> PA);
+
+		/**
+		 * @return The action to perform while evaluating, or null to perform a random one
+		 */
+		A selectEvaluationAction(PredictionArray<A> PA){
+			return PA.getActionDeterministic();
+		}
+
+		/**
+		 * @return The estimated payoff of the state with the given match set and prediction array
+		 */
+		abstract double value(Set<Classifier<A, C>> setM, PredictionArray<A> PA);
+
+		/**
+		 * Updates the classifiers that led from the previous state to the current one
+		 * @param setAMinusOne The action set of the previous step
+		 * @param state The current state
+		 * @param P The adjusted reward of the previous step
+		 * @return The action set to run the GA on
+		 */
+		abstract Set<Classifier<A, C>> update(Set<Classifier<A, C>> setAMinusOne, S state, double P);
+
+		/**
+		 * @return Whether actions are chosen by the theta of classifiers rather than their prediction
+		 */
+		abstract boolean usesTheta();
+
+		/**
+		 * @return Whether selectEvaluationAction samples from the distribution of theta rather than taking the best action
+		 */
+		boolean samplesEvaluationActions(){
+			return false;
+		}
+	}
+
+	/**
+	 * The standard XCS, choosing actions by fitness weighted prediction
+	 */
+	private class NormalEngine extends UpdateEngine {
+		@Override
+		PredictionArray<A> predictionArray(Set<Classifier<A, C>> setM){
+			return PredictionArray.fromMatchSetPrediction(actionSet, setM);
+		}
+
+		@Override
+		A selectAction(PredictionArray<A> PA){
+			return selectBestAction(PA);
+		}
+
+		@Override
+		double value(Set<Classifier<A, C>> setM, PredictionArray<A> PA){
+			return PA.getPrediction(PA.getActionDeterministic());
+		}
+
+		@Override
+		Set<Classifier<A, C>> update(Set<Classifier<A, C>> setAMinusOne, S state, double P){
+			return updateSet(setAMinusOne, P);
+		}
+
+		@Override
+		boolean usesTheta(){
+			return false;
+		}
+	}
+
+	private class XCSMUEngine extends NormalEngine {
+		@Override
+		Set<Classifier<A, C>> update(Set<Classifier<A, C>> setAMinusOne, S state, double P){
+			return updateSetXCSMU(setAMinusOne, P);
+		}
+	}
+
+	/**
+	 * The methods that choose actions from the distribution of the thetas of the match set
+	 */
+	private abstract class ThetaEngine extends UpdateEngine {
+		@Override
+		PredictionArray<A> predictionArray(Set<Classifier<A, C>> setM){
+			return PredictionArray.fromMatchSetTheta(actionSet, setM);
+		}
+
+		@Override
+		A selectAction(PredictionArray<A> PA){
+			return selectActionFromDistribution(PA);
+		}
+
+		@Override
+		A selectEvaluationAction(PredictionArray<A> PA){
+			return selectActionFromDistribution(PA);
+		}
+
+		@Override
+		boolean samplesEvaluationActions(){
+			return true;
+		}
+
+		@Override
+		double value(Set<Classifier<A, C>> setM, PredictionArray<A> PA){
+			return valueFunctionEstimation(setM);
+		}
+
+		@Override
+		boolean usesTheta(){
+			return true;
+		}
+	}
+
+	private class RXCSEngine extends ThetaEngine {
+		@Override
+		Set<Classifier<A, C>> update(Set<Classifier<A, C>> setAMinusOne, S state, double P){
+			if(state.equals(preState))return setAMinusOne;
+			return updateSetRXCS(preState, preAct, P);
+		}
+	}
+
+	/**
+	 * Natural XCS, moving theta along the features of the previous action
+	 */
+	private class NXCSEngine extends ThetaEngine {
+		@Override
+		Set<Classifier<A, C>> update(Set<Classifier<A, C>> setAMinusOne, S state, double P){
+			return updateSetNXCS(this, preState, preAct, P);
+		}
+
+		/**
+		 * Changes the theta of a classifier of the match set, after its old theta has been kept in w
+		 * @param classifier The classifier to change
+		 * @param change The step size times the feature of the classifier
+		 * @param dot The sum over the match set of (theta - w) * feature^2
+		 */
+		void updateTheta(Classifier<A, C> classifier, double change, double dot){
+			classifier.setTheta(classifier.getTheta() + change);
+		}
+	}
+
+	/**
+	 * NXCS with a momentum term, evaluated greedily
+	 */
+	private class NXCS2Engine extends NXCSEngine {
+		@Override
+		A selectEvaluationAction(PredictionArray<A> PA){
+			return PA.getActionDeterministic();
+		}
+
+		@Override
+		boolean samplesEvaluationActions(){
+			return false;
+		}
+
+		@Override
+		void updateTheta(Classifier<A, C> classifier, double change, double dot){
+			double mod = 0.1 * (classifier.getTheta() - classifier.getW()) + change - constants.getOmega() * dot;
+			classifier.setTheta(classifier.getTheta() + mod);
+		}
+	}
 }
@@ -21,6 +21,15 @@ public class XCSConstants {
 		public String toString(){return readableName;}
 	}
 
+	public static enum SelectionMethod{
+		ROULETTE("Roulette"),
+		TOURNAMENT("Tournament");
+		private final String readableName;
+		SelectionMethod(String name){this.readableName = name;}
+		@Override
+		public String toString(){return readableName;}
+	}
+
 	public XCSConstants(XCSConstantsBuilder build){
 		//Initialise Constants
 		stateDim = build.getStateDim();
@@ -50,6 +59,9 @@ public class XCSConstants {
 		SP = build.getSP();
 		updateMethod = build.getUpdateMethod();
 		omega = build.getOmega();
+		useExactEvaluation = build.useExactEvaluation();
+		selectionMethod = build.getSelectionMethod();
+		tournamentSize = build.getTournamentSize();
 	}
 
 	/** The Number of dimensions (bits) in the state space **/
@@ -143,6 +155,14 @@ public class XCSConstants {
 	/** The method to use when updating the set */
 	private final UpdateMethod updateMethod;
 
+	/** Flag as to whether environments that can evaluate a policy exactly should be used in place of sampled episodes */
+	private final boolean useExactEvaluation;
+
+	/** The method used to select parents in the genetic algorithm */
+	private final SelectionMethod selectionMethod;
+
+	/** The size of a tournament, as a fraction of the numerosity of the action set */
+	private final double tournamentSize;
 
 	/*===================
 	 *    Getters
@@ -155,6 +175,28 @@ public class XCSConstants {
 		return updateMethod;
 	}
 
+	/**
+	 * @return Whether performance is measured exactly by environments that implement PolicyEvaluator,
+	 * rather than by sampling episodes
+	 */
+	public boolean useExactEvaluation() {
+		return useExactEvaluation;
+	}
+
+	/**
+	 * @return The method used to select parents in the genetic algorithm
+	 */
+	public SelectionMethod getSelectionMethod() {
+		return selectionMethod;
+	}
+
+	/**
+	 * @return The size of a tournament in tournament selection, as a fraction of the numerosity of the action set
+	 */
+	public double getTournamentSize() {
+		return tournamentSize;
+	}
+
 	/**
 	 * @return The minimum number of actions that must be in the match set, before covering occurs
 	 */
@@ -1,5 +1,6 @@
 package xcs;
 
+import xcs.XCSConstants.SelectionMethod;
 import xcs.XCSConstants.UpdateMethod;
 
 /**
@@ -111,6 +112,15 @@ public class XCSConstantsBuilder {
 	/** The method to use when updating the set */
 	private UpdateMethod updateMethod = UpdateMethod.NORMAL;
 
+	/** Flag as to whether environments that can evaluate a policy exactly should be used in place of sampled episodes */
+	private boolean useExactEvaluation = false;
+
+	/** The method used to select parents in the genetic algorithm */
+	private SelectionMethod selectionMethod = SelectionMethod.ROULETTE;
+
+	/** The size of a tournament, as a fraction of the numerosity of the action set. Recommended Range 0.2 -> 0.6 */
+	private double tournamentSize = 0.4;
+
 	/** The minimum number of actions that must be in the match set, before covering occurs */
 	private int thetaNma = 5;
 
@@ -118,6 +128,28 @@ public class XCSConstantsBuilder {
 	 *    Getters
 	 *===================*/
 
+	/**
+	 * @return Whether performance is measured exactly by environments that implement PolicyEvaluator,
+	 * rather than by sampling episodes
+	 */
+	public boolean useExactEvaluation() {
+		return useExactEvaluation;
+	}
+
+	/**
+	 * @return The method used to select parents in the genetic algorithm
+	 */
+	public SelectionMethod getSelectionMethod() {
+		return selectionMethod;
+	}
+
+	/**
+	 * @return The size of a tournament in tournament selection, as a fraction of the numerosity of the action set
+	 */
+	public double getTournamentSize() {
+		return tournamentSize;
+	}
+
 	/**
 	 * @return The minimum number of actions that must be in the match set, before covering occurs
 	 */
@@ -358,6 +390,35 @@ public class XCSConstantsBuilder {
 		this.thetaNma = thetaNma;
 	}
 
+	/**
+	 * Sets whether to measure performance exactly, on environments that implement PolicyEvaluator,
+	 * rather than by sampling episodes
+	 * @param useExactEvaluation Whether to use exact evaluation where it is available
+	 */
+	public void setUseExactEvaluation(boolean useExactEvaluation) {
+		this.useExactEvaluation = useExactEvaluation;
+	}
+
+	/**
+	 * Sets the method used to select parents in the genetic algorithm. If
+	 * the argument given is null, default to roulette wheel selection
+	 * @param method The new selection method
+	 */
+	public void setSelectionMethod(SelectionMethod method) {
+		if(method == null)method = SelectionMethod.ROULETTE;
+		selectionMethod = method;
+	}
+
+	/**
+	 * Sets the size of a tournament in tournament selection, as a fraction of the numerosity of the action set.
+	 * At least one classifier always takes part.
+	 * @param tournamentSize The new tournament size, in (0, 1]
+	 */
+	public void setTournamentSize(double tournamentSize) {
+		if(!(tournamentSize > 0 && tournamentSize <= 1))throw new IllegalArgumentException("Tournament size must be in (0, 1]");
+		this.tournamentSize = tournamentSize;
+	}
+
 	/**
 	 * Sets whether to use a modified version of action set subsumption in which
 	 * classifiers are sorted by their fitness before being subsumed
@@ -0,0 +1,205 @@
+package xcs.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.jfree.chart.JFreeChart;
+
+/**
+ * A background queue that renders charts to files in parallel, so that
+ * writing charts does not hold up the thread running the experiments.
+ *
+ * The worker threads time out when idle, so a program does not need to shut
+ * the renderer down to exit, and any queued charts are still written before it does.
+ */
+public class ChartRenderer {
+	public static enum Format{
+		PNG("png"),
+		SVG("svg");
+		private final String extension;
+		Format(String extension){this.extension = extension;}
+		public String getExtension(){return extension;}
+	}
+
+	private static ChartRenderer defaultRenderer;
+
+	private final ThreadPoolExecutor executor;
+	private final Format format;
+	private final int width;
+	private final int height;
+	private final List<Future<File>> pending = new ArrayList<Future<File>>();
+
+	/**
+	 * Creates a renderer writing 640x480 charts with one thread per processor
+	 * @param format The format to write charts in
+	 */
+	public ChartRenderer(Format format){
+		this(format, Runtime.getRuntime().availableProcessors(), 640, 480);
+	}
+
+	/**
+	 * Creates a new renderer
+	 * @param format The format to write charts in
+	 * @param threads The maximum number of charts to render at once
+	 * @param width The width of the charts
+	 * @param height The height of the charts
+	 */
+	public ChartRenderer(Format format, int threads, int width, int height){
+		if(threads <= 0)throw new IllegalArgumentException("Number of threads must be > 0");
+		this.format = format;
+		this.width = width;
+		this.height = height;
+
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "Chart Renderer " + count.incrementAndGet());
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return The renderer shared by StatsLoggers that have not been given one. Writes PNGs.
+	 */
+	public static synchronized ChartRenderer getDefault(){
+		if(defaultRenderer == null)defaultRenderer = new ChartRenderer(Format.PNG);
+		return defaultRenderer;
+	}
+
+	/**
+	 * Sets the renderer shared by StatsLoggers that have not been given one
+	 * @param renderer The new default renderer
+	 */
+	public static synchronized void setDefault(ChartRenderer renderer){
+		defaultRenderer = renderer;
+	}
+
+	/**
+	 * @return The format this renderer writes
+	 */
+	public Format getFormat(){
+		return format;
+	}
+
+	/**
+	 * Queues the given chart to be written. The chart must not be modified after being queued.
+	 * @param chart The chart to render
+	 * @param file The file to write to. Its extension is replaced with the one for this renderers format
+	 * @return A future holding the written file
+	 */
+	public Future<File> render(final JFreeChart chart, File file){
+		final File target = withExtension(file);
+		Future<File> result = executor.submit(new Callable<File>(){
+			@Override
+			public File call() throws IOException{
+				File parent = target.getAbsoluteFile().getParentFile();
+				if(parent != null)parent.mkdirs();
+				try{
+					if(format == Format.SVG){
+						SVGChartWriter.write(chart, target, width, height);
+					}
+					else{
+						ImageIO.write(chart.createBufferedImage(width, height), "png", target);
+					}
+				}
+				catch(IOException e){
+					System.err.println("Error writing chart " + target.getAbsolutePath());
+					e.printStackTrace();
+					throw e;
+				}
+				catch(RuntimeException e){
+					//Such as JFreeChart failing to draw the chart
+					System.err.println("Error rendering chart " + target.getAbsolutePath());
+					e.printStackTrace();
+					throw e;
+				}
+				System.out.printf("Wrote %s with size %d%n", target.getAbsolutePath(), target.length());
+				return target;
+			}
+		});
+
+		synchronized(pending){
+			//Forget charts that have already been written successfully
+			Iterator<Future<File>> iter = pending.iterator();
+			while(iter.hasNext()){
+				Future<File> future = iter.next();
+				if(future.isDone() && !failed(future))iter.remove();
+			}
+			pending.add(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Blocks until every chart queued so far has been written. Failures are printed as they
+	 * happen, but programs should call this before finishing to fail when a chart could not be written.
+	 * @throws IOException If any of the charts could not be written
+	 */
+	public void awaitCompletion() throws IOException{
+		List<Future<File>> waiting;
+		synchronized(pending){
+			waiting = new ArrayList<Future<File>>(pending);
+			pending.clear();
+		}
+
+		IOException failure = null;
+		for(Future<File> future : waiting){
+			try{
+				future.get();
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted waiting for charts", e);
+			}
+			catch(ExecutionException e){
+				if(failure == null)failure = new IOException("Failed to write chart", e.getCause());
+			}
+		}
+		if(failure != null)throw failure;
+	}
+
+	/**
+	 * Stops accepting new charts. Charts already queued are still written.
+	 */
+	public void shutdown(){
+		executor.shutdown();
+	}
+
+	private boolean failed(Future<File> future){
+		try{
+			future.get();
+			return false;
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			return true;
+		}
+		catch(ExecutionException e){
+			return true;
+		}
+	}
+
+	private File withExtension(File file){
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if(dot >= 0)name = name.substring(0, dot);
+		return new File(file.getParentFile(), name + "." + format.getExtension());
+	}
+}
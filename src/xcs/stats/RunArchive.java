@@ -0,0 +1,213 @@
+package xcs.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads an archive written by {@link RunArchiveWriter}, giving random access
+ * to the snapshots of any (algorithm, environment, trial, timestep).
+ */
+public class RunArchive {
+	/**
+	 * The index entry of a single run in an archive
+	 */
+	static class Entry {
+		final String algorithm;
+		final String environment;
+		final int trial;
+		final long offset;
+		final int length;
+		final int count;
+
+		Entry(String algorithm, String environment, int trial, long offset, int length, int count){
+			this.algorithm = algorithm;
+			this.environment = environment;
+			this.trial = trial;
+			this.offset = offset;
+			this.length = length;
+			this.count = count;
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final boolean compressed;
+	private final Map<String, Entry> index = new LinkedHashMap<String, Entry>();
+
+	/* The most recently decoded run, as runs are usually read one timestep at a time */
+	private Entry cachedEntry;
+	private List<Snapshot> cachedRun;
+
+	/**
+	 * Opens the given archive and reads its index
+	 * @param archive The archive file to open
+	 * @throws IOException If the file cannot be read or is not an archive
+	 */
+	public RunArchive(File archive) throws IOException{
+		file = new RandomAccessFile(archive, "r");
+		try{
+			if(file.readInt() != RunArchiveWriter.MAGIC)throw new IOException("Not a run archive: " + archive);
+			short version = file.readShort();
+			if(version != RunArchiveWriter.VERSION)throw new IOException("Unsupported run archive version " + version);
+			compressed = file.readBoolean();
+
+			file.seek(file.length() - RunArchiveWriter.FOOTER_SIZE);
+			long indexOffset = file.readLong();
+			if(file.readInt() != RunArchiveWriter.MAGIC)throw new IOException("Run archive was not closed: " + archive);
+
+			file.seek(indexOffset);
+			int entries = file.readInt();
+			for(int i = 0;i < entries;i ++){
+				Entry entry = new Entry(file.readUTF(), file.readUTF(), file.readInt(), file.readLong(), file.readInt(), file.readInt());
+				index.put(key(entry.algorithm, entry.environment, entry.trial), entry);
+			}
+		}
+		catch(IOException e){
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The names of all algorithms in this archive, in the order they were written
+	 */
+	public Set<String> getAlgorithms(){
+		Set<String> algorithms = new LinkedHashSet<String>();
+		for(Entry entry : index.values()){
+			algorithms.add(entry.algorithm);
+		}
+		return algorithms;
+	}
+
+	/**
+	 * @param algorithm The algorithm to look for
+	 * @return The names of all environments the given algorithm was run on
+	 */
+	public Set<String> getEnvironments(String algorithm){
+		Set<String> environments = new LinkedHashSet<String>();
+		for(Entry entry : index.values()){
+			if(entry.algorithm.equals(algorithm))environments.add(entry.environment);
+		}
+		return environments;
+	}
+
+	/**
+	 * @return The trial numbers stored for the given algorithm and environment, in the order they were written
+	 */
+	public List<Integer> getTrials(String algorithm, String environment){
+		List<Integer> trials = new ArrayList<Integer>();
+		for(Entry entry : index.values()){
+			if(entry.algorithm.equals(algorithm) && entry.environment.equals(environment))trials.add(entry.trial);
+		}
+		return trials;
+	}
+
+	/**
+	 * @return The number of snapshots stored for the given run
+	 * @throws IllegalArgumentException If the run is not in this archive
+	 */
+	public int getTimestepCount(String algorithm, String environment, int trial){
+		return getEntry(algorithm, environment, trial).count;
+	}
+
+	/**
+	 * Reads every snapshot of the given run
+	 * @return The snapshots of the run, in the order they were taken
+	 * @throws IllegalArgumentException If the run is not in this archive
+	 */
+	public synchronized List<Snapshot> getRun(String algorithm, String environment, int trial) throws IOException{
+		Entry entry = getEntry(algorithm, environment, trial);
+		if(entry != cachedEntry){
+			cachedRun = Collections.unmodifiableList(decode(entry));
+			cachedEntry = entry;
+		}
+		return cachedRun;
+	}
+
+	/**
+	 * Reads a single snapshot of the given run
+	 * @param timestep The index of the snapshot in the run (Not the timestamp it was taken at)
+	 * @return The snapshot
+	 */
+	public Snapshot getSnapshot(String algorithm, String environment, int trial, int timestep) throws IOException{
+		return getRun(algorithm, environment, trial).get(timestep);
+	}
+
+	/**
+	 * Folds every trial of the given algorithm and environment into a StatsLogger
+	 * @param retainSnapshots Whether the returned logger should retain the individual snapshots
+	 * @return The StatsLogger containing every run
+	 */
+	public StatsLogger toStatsLogger(String algorithm, String environment, boolean retainSnapshots) throws IOException{
+		StatsLogger logger = new StatsLogger(retainSnapshots);
+		for(int trial : getTrials(algorithm, environment)){
+			logger.logRun(getRun(algorithm, environment, trial));
+		}
+		return logger;
+	}
+
+	/**
+	 * Exports the runs of the given algorithm and environment to the CSV layout
+	 * written by {@link StatsLogger#writeCSVFiles(String, String)}
+	 * @param csvFile The file name to write to, with <TRIAL_NUM> in place of the trial number
+	 * @param performanceMeasure The name of the performance measure
+	 */
+	public void exportCSV(String algorithm, String environment, String csvFile, String performanceMeasure) throws IOException{
+		toStatsLogger(algorithm, environment, true).writeCSVFiles(csvFile, performanceMeasure);
+	}
+
+	public void close() throws IOException{
+		file.close();
+	}
+
+	private Entry getEntry(String algorithm, String environment, int trial){
+		Entry entry = index.get(key(algorithm, environment, trial));
+		if(entry == null)throw new IllegalArgumentException(String.format("No run for %s on %s trial %d", algorithm, environment, trial));
+		return entry;
+	}
+
+	private List<Snapshot> decode(Entry entry) throws IOException{
+		byte[] block = new byte[entry.length];
+		file.seek(entry.offset);
+		file.readFully(block);
+
+		InputStream bytes = new ByteArrayInputStream(block);
+		if(compressed)bytes = new InflaterInputStream(bytes);
+		DataInputStream in = new DataInputStream(bytes);
+		try{
+			int count = in.readInt();
+			int[] time = new int[count];
+			int[] populationSize = new int[count];
+			double[][] columns = new double[4][count];
+			for(int i = 0;i < count;i ++)time[i] = in.readInt();
+			for(int i = 0;i < count;i ++)populationSize[i] = in.readInt();
+			for(double[] column : columns){
+				for(int i = 0;i < count;i ++)column[i] = in.readDouble();
+			}
+
+			List<Snapshot> run = new ArrayList<Snapshot>(count);
+			for(int i = 0;i < count;i ++){
+				run.add(new Snapshot(populationSize[i], columns[3][i], columns[2][i], columns[0][i], columns[1][i], time[i]));
+			}
+			return run;
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	private static String key(String algorithm, String environment, int trial){
+		return algorithm + '\u0000' + environment + '\u0000' + trial;
+	}
+}
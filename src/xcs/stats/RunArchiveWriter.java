@@ -0,0 +1,134 @@
+package xcs.stats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes the snapshots of many runs into a single compact binary archive.
+ *
+ * Each run is stored as one block with a column per Snapshot field, optionally
+ * deflate compressed. An index of (algorithm, environment, trial) to block offset is
+ * written at the end of the file so that {@link RunArchive} can read any run without
+ * scanning the others.
+ *
+ * Layout:
+ * <pre>
+ * header: int MAGIC, short VERSION, boolean compressed
+ * blocks: [int count, int[] time, int[] populationSize, double[] fitness,
+ *          double[] specificity, double[] macroProportion, double[] performance]*
+ * index:  int entries, [UTF algorithm, UTF environment, int trial, long offset, int length, int count]*
+ * footer: long indexOffset, int MAGIC
+ * </pre>
+ */
+public class RunArchiveWriter {
+	static final int MAGIC = 0x58435341; //XCSA
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 4 + 2 + 1;
+	static final int FOOTER_SIZE = 8 + 4;
+
+	private final DataOutputStream out;
+	private final boolean compress;
+	private final List<RunArchive.Entry> index = new ArrayList<RunArchive.Entry>();
+	private long position;
+	private boolean closed;
+
+	/**
+	 * Creates a new archive, overwriting any existing file
+	 * @param file The file to write to
+	 * @param compress Whether to deflate each run block
+	 * @throws IOException If the file cannot be created
+	 */
+	public RunArchiveWriter(File file, boolean compress) throws IOException{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)parent.mkdirs();
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		this.compress = compress;
+
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeBoolean(compress);
+		position = HEADER_SIZE;
+	}
+
+	/**
+	 * Appends the snapshots of a single run to the archive. Safe to call from
+	 * multiple threads as trials finish.
+	 * @param algorithm The name of the algorithm used in the run
+	 * @param environment The name of the environment the run was on
+	 * @param trial The trial number of the run
+	 * @param stats The snapshots taken during the run, as given by XCS.getStats()
+	 * @throws IOException If the block cannot be written
+	 */
+	public synchronized void writeRun(String algorithm, String environment, int trial, List<Snapshot> stats) throws IOException{
+		if(closed)throw new IllegalStateException("Archive has already been closed");
+
+		byte[] block = encode(stats);
+		out.write(block);
+		index.add(new RunArchive.Entry(algorithm, environment, trial, position, block.length, stats.size()));
+		position += block.length;
+	}
+
+	/**
+	 * Writes the index and closes the archive. Further calls to writeRun will fail.
+	 * @throws IOException If the index cannot be written
+	 */
+	public synchronized void close() throws IOException{
+		if(closed)return;
+		closed = true;
+
+		try{
+			long indexOffset = position;
+			out.writeInt(index.size());
+			for(RunArchive.Entry entry : index){
+				out.writeUTF(entry.algorithm);
+				out.writeUTF(entry.environment);
+				out.writeInt(entry.trial);
+				out.writeLong(entry.offset);
+				out.writeInt(entry.length);
+				out.writeInt(entry.count);
+			}
+			out.writeLong(indexOffset);
+			out.writeInt(MAGIC);
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	private byte[] encode(List<Snapshot> stats) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + stats.size() * 40);
+		DataOutputStream block;
+		Deflater deflater = null;
+		if(compress){
+			deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			block = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+		}
+		else{
+			block = new DataOutputStream(bytes);
+		}
+
+		try{
+			block.writeInt(stats.size());
+			for(Snapshot s : stats)block.writeInt(s.getTimestamp());
+			for(Snapshot s : stats)block.writeInt((int)s.getPopulationSize());
+			for(Snapshot s : stats)block.writeDouble(s.getAverageFitness());
+			for(Snapshot s : stats)block.writeDouble(s.getAverageSpecificity());
+			for(Snapshot s : stats)block.writeDouble(s.getMacroClassifierProportion());
+			for(Snapshot s : stats)block.writeDouble(s.getPerformance());
+		}
+		finally{
+			block.close();
+			if(deflater != null)deflater.end();
+		}
+
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,100 @@
+package xcs.stats;
+
+/**
+ * An online accumulator for a single measured value, using Welford's
+ * algorithm so that the mean and variance can be kept in constant memory
+ * regardless of how many samples are added.
+ *
+ * Not thread safe on its own. Callers that share an instance across threads
+ * should synchronize externally.
+ */
+public class RunningStatistic {
+	/* The z value of a two sided 95% confidence interval */
+	private static final double Z_95 = 1.959963984540054;
+
+	private long count;
+	private double mean;
+	private double m2;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public RunningStatistic(){
+	}
+
+	/**
+	 * Creates a copy of the given statistic, unaffected by samples later added to it
+	 * @param other The statistic to copy
+	 */
+	public RunningStatistic(RunningStatistic other){
+		count = other.count;
+		mean = other.mean;
+		m2 = other.m2;
+		min = other.min;
+		max = other.max;
+	}
+
+	/**
+	 * Adds a new sample to this statistic
+	 * @param value The sample to add
+	 */
+	public void add(double value){
+		++count;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+
+		if(value < min)min = value;
+		if(value > max)max = value;
+	}
+
+	/**
+	 * @return The number of samples that have been added
+	 */
+	public long getCount(){
+		return count;
+	}
+
+	/**
+	 * @return The arithmetic mean of the added samples, or 0 if there are none
+	 */
+	public double getMean(){
+		return mean;
+	}
+
+	/**
+	 * @return The unbiased sample variance, or 0 if fewer than two samples have been added
+	 */
+	public double getVariance(){
+		if(count < 2)return 0;
+		return m2 / (count - 1);
+	}
+
+	/**
+	 * @return The sample standard deviation
+	 */
+	public double getStandardDeviation(){
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * @return Half the width of the 95% confidence interval around the mean
+	 */
+	public double getConfidenceInterval(){
+		if(count < 2)return 0;
+		return Z_95 * getStandardDeviation() / Math.sqrt(count);
+	}
+
+	/**
+	 * @return The smallest sample added, or 0 if there are none
+	 */
+	public double getMin(){
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * @return The largest sample added, or 0 if there are none
+	 */
+	public double getMax(){
+		return count == 0 ? 0 : max;
+	}
+}
@@ -0,0 +1,203 @@
+package xcs.stats;
+
+import java.awt.Color;
+import java.awt.Paint;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.AbstractRenderer;
+import org.jfree.chart.renderer.xy.XYItemRenderer;
+import org.jfree.data.Range;
+import org.jfree.data.general.DatasetUtilities;
+import org.jfree.data.xy.IntervalXYDataset;
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * Writes the line charts produced by StatsLogger as a lightweight SVG,
+ * drawing the series, their interval bands, the axes and the title directly
+ * from the dataset rather than rasterizing the chart.
+ */
+class SVGChartWriter {
+	private static final int MARGIN_LEFT = 70;
+	private static final int MARGIN_RIGHT = 20;
+	private static final int MARGIN_TOP = 50;
+	private static final int MARGIN_BOTTOM = 50;
+	private static final int TICKS = 5;
+
+	private SVGChartWriter(){}
+
+	/**
+	 * Writes the given XY chart as an SVG
+	 * @param chart The chart to write. Must have an XYPlot
+	 * @param file The file to write to
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 */
+	public static void write(JFreeChart chart, File file, int width, int height) throws IOException{
+		XYPlot plot = chart.getXYPlot();
+		XYDataset data = plot.getDataset();
+		XYItemRenderer renderer = plot.getRenderer();
+
+		Range xRange = DatasetUtilities.findDomainBounds(data, true);
+		Range yRange = DatasetUtilities.findRangeBounds(data, true);
+		if(xRange == null)xRange = new Range(0, 1);
+		if(yRange == null)yRange = new Range(0, 1);
+		if(xRange.getLength() == 0)xRange = new Range(xRange.getLowerBound() - 1, xRange.getUpperBound() + 1);
+		if(yRange.getLength() == 0)yRange = new Range(yRange.getLowerBound() - 1, yRange.getUpperBound() + 1);
+		yRange = Range.expand(yRange, 0.05, 0.05);
+
+		Frame frame = new Frame(xRange, yRange, MARGIN_LEFT, MARGIN_TOP, width - MARGIN_LEFT - MARGIN_RIGHT, height - MARGIN_TOP - MARGIN_BOTTOM);
+
+		Writer out = new FileWriter(file);
+		try{
+			out.write(String.format(Locale.ROOT, "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" viewBox=\"0 0 %d %d\" font-family=\"sans-serif\">%n", width, height, width, height));
+			out.write(String.format(Locale.ROOT, "<rect width=\"%d\" height=\"%d\" fill=\"white\"/>%n", width, height));
+
+			//Title, one line per line of the chart title
+			if(chart.getTitle() != null){
+				String[] lines = chart.getTitle().getText().split("\n");
+				for(int i = 0;i < lines.length;i ++){
+					out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"middle\" font-size=\"16\" font-weight=\"bold\">%s</text>%n", width / 2, 20 + i * 18, escape(lines[i])));
+				}
+			}
+
+			writeAxes(out, frame, plot.getDomainAxis().getLabel(), plot.getRangeAxis().getLabel());
+
+			//Interval bands first so the lines are drawn over them
+			if(data instanceof IntervalXYDataset){
+				IntervalXYDataset intervals = (IntervalXYDataset)data;
+				for(int s = 0;s < data.getSeriesCount();s ++){
+					int n = data.getItemCount(s);
+					if(n == 0)continue;
+					StringBuilder points = new StringBuilder();
+					for(int i = 0;i < n;i ++){
+						points.append(frame.point(intervals.getXValue(s, i), intervals.getEndYValue(s, i)));
+					}
+					for(int i = n - 1;i >= 0;i --){
+						points.append(frame.point(intervals.getXValue(s, i), intervals.getStartYValue(s, i)));
+					}
+					out.write(String.format(Locale.ROOT, "<polygon points=\"%s\" fill=\"%s\" fill-opacity=\"0.25\" stroke=\"none\"/>%n", points.toString().trim(), colour(fillPaint(renderer, s), renderer.getItemPaint(s, 0))));
+				}
+			}
+
+			for(int s = 0;s < data.getSeriesCount();s ++){
+				StringBuilder points = new StringBuilder();
+				for(int i = 0;i < data.getItemCount(s);i ++){
+					points.append(frame.point(data.getXValue(s, i), data.getYValue(s, i)));
+				}
+				out.write(String.format(Locale.ROOT, "<polyline points=\"%s\" fill=\"none\" stroke=\"%s\" stroke-width=\"1\"/>%n", points.toString().trim(), colour(renderer.getItemPaint(s, 0), null)));
+			}
+
+			//Legend
+			if(chart.getLegend() != null){
+				for(int s = 0;s < data.getSeriesCount();s ++){
+					int y = height - 8 - (data.getSeriesCount() - 1 - s) * 14;
+					int x = width - MARGIN_RIGHT - 150;
+					out.write(String.format(Locale.ROOT, "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" stroke=\"%s\" stroke-width=\"2\"/>%n", x, y - 4, x + 20, y - 4, colour(renderer.getItemPaint(s, 0), null)));
+					out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" font-size=\"11\">%s</text>%n", x + 25, y, escape(String.valueOf(data.getSeriesKey(s)))));
+				}
+			}
+
+			out.write("</svg>\n");
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	private static void writeAxes(Writer out, Frame frame, String xLabel, String yLabel) throws IOException{
+		out.write(String.format(Locale.ROOT, "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" stroke=\"black\"/>%n", frame.left, frame.top, frame.width, frame.height));
+
+		double xStep = tickStep(frame.x.getLength());
+		for(double x = Math.ceil(frame.x.getLowerBound() / xStep) * xStep;x <= frame.x.getUpperBound();x += xStep){
+			double px = frame.px(x);
+			out.write(String.format(Locale.ROOT, "<line x1=\"%.1f\" y1=\"%d\" x2=\"%.1f\" y2=\"%d\" stroke=\"black\" stroke-dasharray=\"2,2\" stroke-width=\"0.5\"/>%n", px, frame.top, px, frame.top + frame.height));
+			out.write(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\" font-size=\"10\">%s</text>%n", px, frame.top + frame.height + 14, format(x)));
+		}
+
+		double yStep = tickStep(frame.y.getLength());
+		for(double y = Math.ceil(frame.y.getLowerBound() / yStep) * yStep;y <= frame.y.getUpperBound();y += yStep){
+			double py = frame.py(y);
+			out.write(String.format(Locale.ROOT, "<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" stroke=\"black\" stroke-dasharray=\"2,2\" stroke-width=\"0.5\"/>%n", frame.left, py, frame.left + frame.width, py));
+			out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\" font-size=\"10\">%s</text>%n", frame.left - 4, py + 3, format(y)));
+		}
+
+		out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"middle\" font-size=\"12\">%s</text>%n", frame.left + frame.width / 2, frame.top + frame.height + 32, escape(xLabel)));
+		int yLabelY = frame.top + frame.height / 2;
+		out.write(String.format(Locale.ROOT, "<text x=\"14\" y=\"%d\" text-anchor=\"middle\" font-size=\"12\" transform=\"rotate(-90 14 %d)\">%s</text>%n", yLabelY, yLabelY, escape(yLabel)));
+	}
+
+	/**
+	 * Chooses a tick spacing of 1, 2 or 5 times a power of ten giving about TICKS ticks
+	 */
+	private static double tickStep(double length){
+		double raw = length / TICKS;
+		double magnitude = Math.pow(10, Math.floor(Math.log10(raw)));
+		double residual = raw / magnitude;
+		if(residual > 5)return 10 * magnitude;
+		else if(residual > 2)return 5 * magnitude;
+		else if(residual > 1)return 2 * magnitude;
+		return magnitude;
+	}
+
+	private static String format(double value){
+		if(Math.abs(value) < 1e-9)return "0";
+		if(value == Math.rint(value) && Math.abs(value) < 1e9)return String.valueOf((long)value);
+		return String.format(Locale.ROOT, "%.3g", value);
+	}
+
+	private static Paint fillPaint(XYItemRenderer renderer, int series){
+		if(renderer instanceof AbstractRenderer)return ((AbstractRenderer)renderer).getSeriesFillPaint(series);
+		return null;
+	}
+
+	private static String colour(Paint paint, Paint fallback){
+		if(!(paint instanceof Color))paint = fallback;
+		if(!(paint instanceof Color))return "black";
+		Color c = (Color)paint;
+		return String.format("#%02x%02x%02x", c.getRed(), c.getGreen(), c.getBlue());
+	}
+
+	private static String escape(String text){
+		if(text == null)return "";
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	/**
+	 * Maps data coordinates onto the plot area of the image
+	 */
+	private static class Frame {
+		final Range x;
+		final Range y;
+		final int left;
+		final int top;
+		final int width;
+		final int height;
+
+		Frame(Range x, Range y, int left, int top, int width, int height){
+			this.x = x;
+			this.y = y;
+			this.left = left;
+			this.top = top;
+			this.width = width;
+			this.height = height;
+		}
+
+		double px(double value){
+			return left + (value - x.getLowerBound()) / x.getLength() * width;
+		}
+
+		double py(double value){
+			return top + height - (value - y.getLowerBound()) / y.getLength() * height;
+		}
+
+		String point(double xValue, double yValue){
+			return String.format(Locale.ROOT, "%.1f,%.1f ", px(xValue), py(yValue));
+		}
+	}
+}
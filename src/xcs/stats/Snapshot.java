@@ -23,7 +23,7 @@ public class Snapshot {
 		performance = perf;
 	}
 
-	private Snapshot(int popSize, double perf, double macroClassifierProp, double avFitness, double avSpec, int stamp){
+	Snapshot(int popSize, double perf, double macroClassifierProp, double avFitness, double avSpec, int stamp){
 		populationSize = popSize;
 		macroClassifierProportion = macroClassifierProp;
 		averageFitness = avFitness;
@@ -0,0 +1,128 @@
+package xcs.stats;
+
+/**
+ * Cross trial statistics for every metric recorded in a {@link Snapshot}
+ * at a single logged timestep. Snapshots are folded in as they arrive
+ * so that no individual Snapshot has to be retained.
+ */
+public class SnapshotStatistics {
+	public static final int POPULATION_SIZE = 0;
+	public static final int AVERAGE_FITNESS = 1;
+	public static final int AVERAGE_SPECIFICITY = 2;
+	public static final int MACRO_CLASSIFIER_PROPORTION = 3;
+	public static final int PERFORMANCE = 4;
+	public static final int NUM_METRICS = 5;
+
+	private final RunningStatistic[] metrics = new RunningStatistic[NUM_METRICS];
+	private int time;
+
+	public SnapshotStatistics(){
+		for(int i = 0;i < metrics.length;i ++){
+			metrics[i] = new RunningStatistic();
+		}
+	}
+
+	/**
+	 * Creates a copy of the given statistics, unaffected by snapshots later added to them
+	 * @param other The statistics to copy
+	 */
+	public SnapshotStatistics(SnapshotStatistics other){
+		for(int i = 0;i < metrics.length;i ++){
+			metrics[i] = new RunningStatistic(other.metrics[i]);
+		}
+		time = other.time;
+	}
+
+	/**
+	 * Folds the given snapshot into the statistics for this timestep
+	 * @param snapshot The snapshot to add
+	 */
+	public void add(Snapshot snapshot){
+		if(metrics[0].getCount() == 0)time = snapshot.getTimestamp();
+		metrics[POPULATION_SIZE].add(snapshot.getPopulationSize());
+		metrics[AVERAGE_FITNESS].add(snapshot.getAverageFitness());
+		metrics[AVERAGE_SPECIFICITY].add(snapshot.getAverageSpecificity());
+		metrics[MACRO_CLASSIFIER_PROPORTION].add(snapshot.getMacroClassifierProportion());
+		metrics[PERFORMANCE].add(snapshot.getPerformance());
+	}
+
+	/**
+	 * @param metric One of the metric constants in this class
+	 * @return The running statistic for the given metric
+	 */
+	public RunningStatistic getMetric(int metric){
+		return metrics[metric];
+	}
+
+	/**
+	 * @return The timestamp of the first snapshot added at this timestep
+	 */
+	public int getTimestamp(){
+		return time;
+	}
+
+	/**
+	 * @return The number of snapshots that have been added
+	 */
+	public long getCount(){
+		return metrics[0].getCount();
+	}
+
+	/**
+	 * @return A Snapshot containing the mean value of every metric
+	 */
+	public Snapshot getMean(){
+		return new Snapshot((int)metrics[POPULATION_SIZE].getMean(), metrics[PERFORMANCE].getMean(), metrics[MACRO_CLASSIFIER_PROPORTION].getMean(), metrics[AVERAGE_FITNESS].getMean(), metrics[AVERAGE_SPECIFICITY].getMean(), time);
+	}
+
+	/**
+	 * Writes the mean of every metric followed by the standard deviation,
+	 * 95% confidence interval, minimum and maximum of every metric.
+	 * The first six columns are identical to {@link Snapshot#toCSV()}.
+	 * @return A single CSV line describing this timestep
+	 */
+	public String toCSV(){
+		StringBuilder build = new StringBuilder();
+		build.append(time);
+		for(RunningStatistic metric : metrics){
+			build.append(", ");
+			build.append(metric.getMean());
+		}
+		for(RunningStatistic metric : metrics){
+			build.append(", ");
+			build.append(metric.getStandardDeviation());
+			build.append(", ");
+			build.append(metric.getConfidenceInterval());
+			build.append(", ");
+			build.append(metric.getMin());
+			build.append(", ");
+			build.append(metric.getMax());
+		}
+		build.append("\n");
+
+		return build.toString();
+	}
+
+	/**
+	 * Builds the CSV header matching {@link #toCSV()}
+	 * @param performanceMeasure The name of the performance measure
+	 * @return The header line
+	 */
+	public static String csvHeader(String performanceMeasure){
+		String[] names = {"Population Size", "Average Fitness", "Average Specificity", "Macro Classifier Proportion", performanceMeasure};
+		StringBuilder build = new StringBuilder("Number of Learning Problems");
+		for(String name : names){
+			build.append(", ");
+			build.append(name);
+		}
+		for(String name : names){
+			build.append(", ").append(name).append(" Std Dev");
+			build.append(", ").append(name).append(" 95% CI");
+			build.append(", ").append(name).append(" Min");
+			build.append(", ").append(name).append(" Max");
+		}
+		build.append("\n");
+
+		return build.toString();
+	}
+}
@@ -1,53 +1,129 @@
 package xcs.stats;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Paint;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.XYPlot;
-import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
+import org.jfree.chart.renderer.xy.DeviationRenderer;
+import org.jfree.data.xy.YIntervalSeries;
+import org.jfree.data.xy.YIntervalSeriesCollection;
 
 public class StatsLogger {
+	private static final Color[] SERIES_COLORS = {Color.GREEN, Color.BLUE, Color.PINK, Color.CYAN};
+
 	private List<List<Snapshot>> snapshots = new ArrayList<List<Snapshot>>();
 
-	public void logRun(List<Snapshot> stats){
+	/* Online statistics for each logged timestep, fed by logRun */
+	private final List<SnapshotStatistics> statistics = new ArrayList<SnapshotStatistics>();
+
+	/* The per timestep statistics of each trial logged through logTrial(StatsLogger). Entries may be null */
+	private final List<List<SnapshotStatistics>> trialStatistics = new ArrayList<List<SnapshotStatistics>>();
+
+	/* Whether every individual snapshot is kept, so that per trial CSVs and data dumps can be written */
+	private final boolean retainSnapshots;
+
+	/* The queue charts are rendered on, off the calling thread */
+	private ChartRenderer chartRenderer = ChartRenderer.getDefault();
+
+	public StatsLogger(){
+		this(true);
+	}
+
+	/**
+	 * Creates a new StatsLogger
+	 * @param retainSnapshots Whether to keep every snapshot given to logRun. If false only the
+	 * 			cross trial statistics are kept, which use constant memory per logged timestep
+	 */
+	public StatsLogger(boolean retainSnapshots){
+		this.retainSnapshots = retainSnapshots;
+	}
+
+	/**
+	 * Folds the stats of a finished run into this logger. Safe to call
+	 * from multiple threads as trials finish.
+	 * @param stats The stats of the run, as given by XCS.getStats()
+	 */
+	public synchronized void logRun(List<Snapshot> stats){
 		for(int j = 0;j < stats.size();j ++){
-			if(snapshots.size() <= j){
-				snapshots.add(new ArrayList<Snapshot>());
+			if(statistics.size() <= j){
+				statistics.add(new SnapshotStatistics());
+			}
+			statistics.get(j).add(stats.get(j));
+
+			if(retainSnapshots){
+				if(snapshots.size() <= j){
+					snapshots.add(new ArrayList<Snapshot>());
+				}
+				snapshots.get(j).add(stats.get(j));
 			}
-			snapshots.get(j).add(stats.get(j));
 		}
 	}
 
-	public void logTrial(List<List<Snapshot>> stats){
+	public synchronized void logTrial(List<List<Snapshot>> stats){
 		List<Snapshot> data = new ArrayList<Snapshot>();
 		for(List<Snapshot> s : stats){
 			data.add(Snapshot.average(s));
 		}
 		snapshots.add(data);
+		trialStatistics.add(null);
+	}
+
+	/**
+	 * Logs the averages of all the runs in the given logger as a single trial,
+	 * keeping its cross trial statistics so that multi plots can show error bands.
+	 * The statistics are copied, so runs later logged to the given logger do not change this trial.
+	 * @param logger The logger the runs of the trial were logged to
+	 */
+	public void logTrial(StatsLogger logger){
+		//Copied before taking this logger's lock, so the two locks are never held together
+		List<SnapshotStatistics> stats = Collections.unmodifiableList(logger.getStatistics());
+		List<Snapshot> data = new ArrayList<Snapshot>();
+		for(SnapshotStatistics s : stats){
+			data.add(s.getMean());
+		}
+		synchronized(this){
+			snapshots.add(data);
+			trialStatistics.add(stats);
+		}
+	}
+
+	/**
+	 * Sets the renderer used to write charts, which controls the output format
+	 * @param chartRenderer The new renderer
+	 */
+	public void setChartRenderer(ChartRenderer chartRenderer){
+		this.chartRenderer = chartRenderer;
 	}
 
 	public List<List<Snapshot>> getStatsList(){
 		return snapshots;
 	}
 
-	public void writeLogAndCSVFiles(String csvFile, String logFile, String performanceMeasure) throws IOException{
-		File csv = new File(csvFile.replaceAll("<TRIAL_NUM>", "Average"));
-		csv.getParentFile().mkdirs();
-		FileWriter dataWriter = new FileWriter(csv);
+	/**
+	 * @return Copies of the per timestep statistics logged through logRun so far, which later
+	 * 			calls to logRun do not change
+	 */
+	public synchronized List<SnapshotStatistics> getStatistics(){
+		List<SnapshotStatistics> copies = new ArrayList<SnapshotStatistics>(statistics.size());
+		for(SnapshotStatistics s : statistics){
+			copies.add(new SnapshotStatistics(s));
+		}
+		return copies;
+	}
 
-		//Write Column Headers
-		dataWriter.write("Number of Learning Problems, Population Size, Average Fitness, Average Specificity, Macro Classifier Proportion, " + performanceMeasure + "\n");
+	public synchronized void writeLogAndCSVFiles(String csvFile, String logFile, String performanceMeasure) throws IOException{
+		writeCSVFiles(csvFile, performanceMeasure);
+
+		if(!retainSnapshots)return;
 
 		for(int i = 0;i < snapshots.size();i ++){
 			File finalLogFile = new File(logFile.replaceAll("<TIMESTEP_NUM>", ""+i));
@@ -60,19 +136,41 @@ public class StatsLogger {
 					logWriter.append(s.toString());
 					logWriter.append("\n\n");
 				}
-
-				dataWriter.append(Snapshot.average(stats).toCSV());
 			}
 			finally{
 				logWriter.close();
 			}
 		}
-		dataWriter.close();
+	}
+
+	/**
+	 * Writes the cross trial statistics to the CSV file named with "Average" in place of
+	 * <TRIAL_NUM>, and if snapshots are retained, one CSV file per trial.
+	 * @param csvFile The file name to write to, with <TRIAL_NUM> in place of the trial number
+	 * @param performanceMeasure The name of the performance measure
+	 */
+	public synchronized void writeCSVFiles(String csvFile, String performanceMeasure) throws IOException{
+		File csv = new File(csvFile.replaceAll("<TRIAL_NUM>", "Average"));
+		csv.getAbsoluteFile().getParentFile().mkdirs();
+		FileWriter dataWriter = new FileWriter(csv);
+
+		try{
+			//Write Column Headers
+			dataWriter.write(SnapshotStatistics.csvHeader(performanceMeasure));
+			for(SnapshotStatistics s : statistics){
+				dataWriter.append(s.toCSV());
+			}
+		}
+		finally{
+			dataWriter.close();
+		}
+
+		if(!retainSnapshots || snapshots.isEmpty())return;
 
 		for(int i = 0;i < snapshots.get(0).size();i ++){
 			csv = new File(csvFile.replaceAll("<TRIAL_NUM>", "" + (i + 1)));
+			dataWriter = new FileWriter(csv);
 			try{
-				dataWriter = new FileWriter(csv);
 				dataWriter.write("Number of Learning Problems, Population Size, Average Fitness, Average Specificity, Macro Classifier Proportion, " + performanceMeasure + "\n");
 				for(int j = 0;j < snapshots.size();j ++){
 					dataWriter.append(snapshots.get(j).get(i).toCSV());
@@ -84,31 +182,17 @@ public class StatsLogger {
 		}
 	}
 
-	public void writeChartsAsSinglePlot(String chartFile, String problem, String performanceMeasure) throws IOException{
-		List<Snapshot> averages = new ArrayList<Snapshot>();
-		for(List<Snapshot> s : snapshots){
-			averages.add(Snapshot.average(s));
-		}
-
-		XYSeries[] series = new XYSeries[5];
-		series[0] = new XYSeries("Average Population Size");
-		series[1] = new XYSeries("Average Population Fitness");
-		series[2] = new XYSeries("Average Population Specificity");
-		series[3] = new XYSeries("Average Macro Classifier Proportion");
-		series[4] = new XYSeries(performanceMeasure);
-		for(Snapshot s : averages){
-			series[0].add(s.getTimestamp(), s.getPopulationSize());
-			series[1].add(s.getTimestamp(), s.getAverageFitness());
-			series[2].add(s.getTimestamp(), s.getAverageSpecificity());
-			series[3].add(s.getTimestamp(), s.getMacroClassifierProportion());
-			series[4].add(s.getTimestamp(), s.getPerformance());
-		}
-
+	/**
+	 * Queues one chart per metric showing the mean across all logged runs
+	 * with a band covering the 95% confidence interval of the mean.
+	 * The charts are written in the background by this loggers ChartRenderer.
+	 */
+	public synchronized void writeChartsAsSinglePlot(String chartFile, String problem, String performanceMeasure) throws IOException{
 		String[] labels = {"Average Population Size", "Average Classifier Fitness", "Average Classifier Specificity", "Macro Classifier Proportion", performanceMeasure};
 
 		for(int i = 0;i < labels.length;i ++){
-			XYSeriesCollection data = new XYSeriesCollection();
-			data.addSeries(series[i]);
+			YIntervalSeriesCollection data = new YIntervalSeriesCollection();
+			data.addSeries(createIntervalSeries(labels[i], statistics, i));
 			JFreeChart chart = ChartFactory.createScatterPlot(labels[i] + "\n" + problem, "Number of Learning Problems", labels[i], data);
 			chart.setBackgroundPaint(Color.white);
 			XYPlot plot = chart.getXYPlot();
@@ -117,48 +201,42 @@ public class StatsLogger {
 
 			plot.setRangeGridlinePaint(Color.black);
 			plot.setDomainGridlinePaint(Color.black);
-			plot.setRenderer(new XYLineAndShapeRenderer(true, false){
+			DeviationRenderer renderer = new DeviationRenderer(true, false){
 				@Override
 		        public Paint getItemPaint(int row, int col) {
 		            return Color.black;
 		        }
-			});
+			};
+			renderer.setSeriesStroke(0, new BasicStroke(1.0f));
+			renderer.setSeriesFillPaint(0, Color.gray);
+			renderer.setAlpha(0.3f);
+			plot.setRenderer(renderer);
 			chart.removeLegend();
 
-			File finalChartFile = new File(chartFile.replaceAll("<CHART_TITLE>", labels[i]));
-			finalChartFile.getParentFile().mkdirs();
-			ImageIO.write(chart.createBufferedImage(640, 480), "png", finalChartFile);
-			System.out.printf("Wrote %s with size %d%n", finalChartFile.getAbsolutePath(), finalChartFile.length());
+			chartRenderer.render(chart, new File(chartFile.replaceAll("<CHART_TITLE>", labels[i])));
 		}
 	}
 
-	public void writeChartsAsMultiPlot(String chartFile, String problem, String[] legendNames, String performanceMeasure) throws IOException{
-		//snapshots.size() = number of algorithms
-		XYSeries[][] series = new XYSeries[snapshots.size()][5];
-		for(int i = 0;i < snapshots.size();i ++){
-			series[i][0] = new XYSeries(legendNames[i]);
-			series[i][1] = new XYSeries(legendNames[i]);
-			series[i][2] = new XYSeries(legendNames[i]);
-			series[i][3] = new XYSeries(legendNames[i]);
-			series[i][4] = new XYSeries(legendNames[i]);
-		}
-
-		for(int i = 0;i < snapshots.size();i ++){
-			for(Snapshot s : snapshots.get(i)){
-				series[i][0].add(s.getTimestamp(), s.getPopulationSize());
-				series[i][1].add(s.getTimestamp(), s.getAverageFitness());
-				series[i][2].add(s.getTimestamp(), s.getAverageSpecificity());
-				series[i][3].add(s.getTimestamp(), s.getMacroClassifierProportion());
-				series[i][4].add(s.getTimestamp(), s.getPerformance());
-			}
-		}
-
+	/**
+	 * Queues one chart per metric with a line for every logged trial.
+	 * Trials logged through logTrial(StatsLogger) are drawn with a band covering
+	 * the 95% confidence interval of their mean.
+	 * The charts are written in the background by this loggers ChartRenderer.
+	 */
+	public synchronized void writeChartsAsMultiPlot(String chartFile, String problem, String[] legendNames, String performanceMeasure) throws IOException{
 		String[] labels = {"Average Population Size", "Average Classifier Fitness", "Average Classifier Specificity", "Macro Classifier Proportion", performanceMeasure};
 
 		for(int i = 0;i < labels.length;i ++){
-			XYSeriesCollection data = new XYSeriesCollection();
-			for(int j = 0;j < series.length;j ++){
-				data.addSeries(series[j][i]);
+			//snapshots.size() = number of algorithms
+			YIntervalSeriesCollection data = new YIntervalSeriesCollection();
+			for(int j = 0;j < snapshots.size();j ++){
+				List<SnapshotStatistics> stats = trialStatistics.get(j);
+				if(stats != null){
+					data.addSeries(createIntervalSeries(legendNames[j], stats, i));
+				}
+				else{
+					data.addSeries(createSeries(legendNames[j], snapshots.get(j), i));
+				}
 			}
 			JFreeChart chart = ChartFactory.createScatterPlot(labels[i] + "\n" + problem, "Number of Learning Problems", labels[i], data);
 			chart.setBackgroundPaint(Color.white);
@@ -169,18 +247,49 @@ public class StatsLogger {
 			plot.setRangeGridlinePaint(Color.black);
 			plot.setDomainGridlinePaint(Color.black);
 
-			plot.setRenderer(new XYLineAndShapeRenderer(true, false));
-			plot.getRenderer().setSeriesPaint(0, Color.GREEN);
-			plot.getRenderer().setSeriesPaint(1, Color.BLUE);
-			plot.getRenderer().setSeriesPaint(2, Color.PINK);
-			plot.getRenderer().setSeriesPaint(3, Color.CYAN);
+			DeviationRenderer renderer = new DeviationRenderer(true, false);
+			renderer.setAlpha(0.2f);
+			for(int j = 0;j < SERIES_COLORS.length;j ++){
+				renderer.setSeriesPaint(j, SERIES_COLORS[j]);
+				renderer.setSeriesFillPaint(j, SERIES_COLORS[j]);
+				renderer.setSeriesStroke(j, new BasicStroke(1.0f));
+			}
+			plot.setRenderer(renderer);
 
-			File finalChartFile = new File(chartFile.replaceAll("<CHART_TITLE>", labels[i])).getCanonicalFile();
-			finalChartFile.getParentFile().mkdirs();
-			ImageIO.write(chart.createBufferedImage(640, 480), "png", finalChartFile);
-			System.out.printf("Wrote %s with size %d%n", finalChartFile.getAbsolutePath(), finalChartFile.length());
+			chartRenderer.render(chart, new File(chartFile.replaceAll("<CHART_TITLE>", labels[i])).getCanonicalFile());
 		}
 	}
 
+	/**
+	 * Creates a series of the mean of the given metric, bounded by its 95% confidence interval
+	 */
+	private YIntervalSeries createIntervalSeries(String name, List<SnapshotStatistics> stats, int metric){
+		YIntervalSeries series = new YIntervalSeries(name);
+		for(SnapshotStatistics s : stats){
+			RunningStatistic stat = s.getMetric(metric);
+			double mean = stat.getMean();
+			double ci = stat.getConfidenceInterval();
+			series.add(s.getTimestamp(), mean, mean - ci, mean + ci);
+		}
+		return series;
+	}
 
+	/**
+	 * Creates a series of the given metric with no interval
+	 */
+	private YIntervalSeries createSeries(String name, List<Snapshot> stats, int metric){
+		YIntervalSeries series = new YIntervalSeries(name);
+		for(Snapshot s : stats){
+			double value = 0;
+			switch(metric){
+			case SnapshotStatistics.POPULATION_SIZE: value = s.getPopulationSize(); break;
+			case SnapshotStatistics.AVERAGE_FITNESS: value = s.getAverageFitness(); break;
+			case SnapshotStatistics.AVERAGE_SPECIFICITY: value = s.getAverageSpecificity(); break;
+			case SnapshotStatistics.MACRO_CLASSIFIER_PROPORTION: value = s.getMacroClassifierProportion(); break;
+			case SnapshotStatistics.PERFORMANCE: value = s.getPerformance(); break;
+			}
+			series.add(s.getTimestamp(), value, value, value);
+		}
+		return series;
+	}
 }
@@ -0,0 +1,210 @@
+package xcs.testbed;
+
+import java.util.Arrays;
+
+import xcs.Condition;
+
+/**
+ * A ternary condition over a BitState, packed as two bit masks. A set bit in the care
+ * mask is a specific bit, whose required value is the same bit of the value mask.
+ * Clear care bits are wildcards, and their value bits are always clear.
+ */
+public class BitCondition implements Condition<BitState, BitCondition> {
+
+	private final long[] care;
+	private final long[] value;
+	private final int length;
+
+	/**
+	 * @param care The mask of specific bits
+	 * @param value The values of the specific bits. Bits outside the care mask are ignored
+	 * @param length The number of bits in the condition
+	 */
+	public BitCondition(long[] care, long[] value, int length){
+		if(care.length != BitState.words(length) || value.length != care.length){
+			throw new IllegalArgumentException(String.format("%d bits need %d words", length, BitState.words(length)));
+		}
+		this.care = care.clone();
+		this.value = value.clone();
+		this.length = length;
+
+		this.care[this.care.length - 1] &= BitState.lastWordMask(length);
+		for(int i = 0;i < this.care.length;i ++){
+			this.value[i] &= this.care[i];
+		}
+	}
+
+	/**
+	 * Parses a condition written as '0', '1' and wildcard chars, as printed by toString
+	 * @param condition The condition String
+	 * @return The parsed condition
+	 */
+	public static BitCondition valueOf(String condition){
+		int length = condition.length();
+		long[] care = new long[BitState.words(length)];
+		long[] value = new long[care.length];
+		for(int i = 0;i < length;i ++){
+			char c = condition.charAt(i);
+			if(c == StringCondition.wildcard)continue;
+			care[i >>> 6] |= 1L << i;
+			if(c == '1')value[i >>> 6] |= 1L << i;
+			else if(c != '0')throw new IllegalArgumentException("Invalid condition char: " + c);
+		}
+		return new BitCondition(care, value, length);
+	}
+
+	public int getLength(){
+		return length;
+	}
+
+	/**
+	 * Mutates this condition, swapping each bit between a wildcard
+	 * and the equivalent bit in the given BitState with a probability of mu
+	 *
+	 * @param state the State to mutate with
+	 * @param mu the probability that any given bit will be mutated
+	 */
+	@Override
+	public void mutate(BitState state, double mu) {
+		for(int w = 0;w < care.length;w ++){
+			int bits = Math.min(64, length - (w << 6));
+			long flip = 0;
+			for(int i = 0;i < bits;i ++){
+				if(Math.random() < mu){
+					flip |= 1L << i;
+				}
+			}
+			if(flip == 0)continue;
+
+			care[w] ^= flip;
+			//Bits that became specific take the state's value, bits that became wildcards are cleared
+			value[w] = (value[w] & ~flip) | (state.getWord(w) & flip & care[w]);
+		}
+	}
+
+	/**
+	 * Checks whether this condition matches the given BitState.
+	 * It is a match if every bit in this condition is either a wildcard,
+	 * or the same as the equivalent bit in the given BitState.
+	 * @param state The state to check
+	 * @return Whether this condition matches the given state
+	 */
+	@Override
+	public boolean matchesState(BitState state) {
+		for(int w = 0;w < care.length;w ++){
+			if(((state.getWord(w) ^ value[w]) & care[w]) != 0){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return Whether the bit at the given position is a wildcard
+	 */
+	@Override
+	public boolean isWildcardAtBit(int bit) {
+		return (care[bit >>> 6] & (1L << bit)) == 0;
+	}
+
+	/**
+	 * @return The number of wildcards in this condition
+	 */
+	@Override
+	public int wildcardCount() {
+		int specific = 0;
+		for(long word : care){
+			specific += Long.bitCount(word);
+		}
+
+		return length - specific;
+	}
+
+	/**
+	 * Performs a crossover between this Condition and the given one, updating
+	 * both Conditions. Swaps the bits between two random points.
+	 * @param c2 The BitCondition to crossover with
+	 */
+	@Override
+	public void crossover(BitCondition c2) {
+		int x = (int)(Math.random() * (length + 1));
+		int y = (int)(Math.random() * (length + 1));
+		if(x > y){
+			//Swap x and y
+			int temp = x;
+			x = y;
+			y = temp;
+		}
+
+		for(int w = x >>> 6;w < care.length && (w << 6) < y;w ++){
+			long mask = rangeMask(x - (w << 6), y - (w << 6));
+
+			long temp = (care[w] ^ c2.care[w]) & mask;
+			care[w] ^= temp;
+			c2.care[w] ^= temp;
+
+			temp = (value[w] ^ c2.value[w]) & mask;
+			value[w] ^= temp;
+			c2.value[w] ^= temp;
+		}
+	}
+
+	/**
+	 * @return The mask of bits from..to-1 within a word, clamped to the word
+	 */
+	private static long rangeMask(int from, int to){
+		long low = from <= 0 ? -1L : (-1L << from);
+		long high = to >= 64 ? -1L : ((1L << to) - 1);
+		return low & high;
+	}
+
+	/**
+	 * Checks whether this BitCondition is more general that the given one,
+	 * that is for every position in this condition, it is either a wildcard or equal
+	 * to the given Condition
+	 * @return Whether this Condition is mor general than the given one.
+	 */
+	@Override
+	public boolean isMoreGeneral(BitCondition specific) {
+		if(wildcardCount() <= specific.wildcardCount())return false;
+
+		for(int w = 0;w < care.length;w ++){
+			//Every specific bit here must be specific, with the same value, in the other
+			if((care[w] & ~specific.care[w]) != 0)return false;
+			if(((value[w] ^ specific.value[w]) & care[w]) != 0)return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		char[] chars = new char[length];
+		for(int i = 0;i < length;i ++){
+			if(isWildcardAtBit(i))chars[i] = StringCondition.wildcard;
+			else chars[i] = (value[i >>> 6] & (1L << i)) == 0 ? '0' : '1';
+		}
+		return new String(chars);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(care) + Arrays.hashCode(value);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)return true;
+		if (obj == null)return false;
+		if (getClass() != obj.getClass())return false;
+
+		BitCondition other = (BitCondition) obj;
+		return other.length == length && Arrays.equals(other.care, care) && Arrays.equals(other.value, value);
+	}
+
+	@Override
+	public BitCondition clone(){
+		return new BitCondition(care, value, length);
+	}
+}
@@ -0,0 +1,114 @@
+package xcs.testbed;
+
+import java.util.Arrays;
+
+import xcs.State;
+
+/**
+ * A binary state packed 64 bits to a long, for problems too long to handle
+ * efficiently as Strings. Bit i is stored in bit (i % 64) of word (i / 64).
+ */
+public class BitState implements State<BitCondition>{
+
+	private final long[] bits;
+	private final int length;
+
+	/**
+	 * @param bits The packed bits of the state. Bits past the length are ignored
+	 * @param length The number of bits in the state
+	 */
+	public BitState(long[] bits, int length){
+		if(bits.length != words(length))throw new IllegalArgumentException(String.format("%d bits need %d words, not %d", length, words(length), bits.length));
+		this.bits = bits.clone();
+		this.length = length;
+		this.bits[this.bits.length - 1] &= lastWordMask(length);
+	}
+
+	/**
+	 * Creates a state of up to 64 bits
+	 * @param bits The value of the state, with bit 0 of the state in the least significant bit
+	 * @param length The number of bits in the state
+	 */
+	public BitState(long bits, int length){
+		this(new long[]{bits}, length);
+	}
+
+	/**
+	 * @return The number of longs needed to hold the given number of bits
+	 */
+	static int words(int length){
+		return (length + 63) >>> 6;
+	}
+
+	/**
+	 * @return The mask of the bits in use in the last word of a state with the given number of bits
+	 */
+	static long lastWordMask(int length){
+		int used = length & 63;
+		return used == 0 ? -1L : (1L << used) - 1;
+	}
+
+	public int getLength(){
+		return length;
+	}
+
+	/**
+	 * @return Whether the bit at the given position is set
+	 */
+	public boolean getBit(int bit){
+		return (bits[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * @return The given word of the packed bits. Bits past the length are zero
+	 */
+	public long getWord(int word){
+		return bits[word];
+	}
+
+	/**
+	 * Generates a BitCondition from this BitState.
+	 * @param length The number of bits to be in the created Condition. Should be the length of this state (stateDim)
+	 * @param specificityProbability The probability to choose a bit form this state, rather than a wildcard
+	 * @return The new condition
+	 */
+	@Override
+	public BitCondition makeCondition(int length, double specificityProbability) {
+		long[] care = new long[words(length)];
+		long[] value = new long[care.length];
+		for(int i = 0;i < length;i ++){
+			if(Math.random() < specificityProbability){
+				care[i >>> 6] |= 1L << i;
+			}
+		}
+		for(int i = 0;i < care.length;i ++){
+			value[i] = bits[i] & care[i];
+		}
+
+		return new BitCondition(care, value, length);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(bits) + length;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)return true;
+		if (obj == null)return false;
+		if (getClass() != obj.getClass())return false;
+
+		BitState other = (BitState) obj;
+		return other.length == length && Arrays.equals(other.bits, bits);
+	}
+
+	@Override
+	public String toString(){
+		char[] chars = new char[length];
+		for(int i = 0;i < length;i ++){
+			chars[i] = getBit(i) ? '1' : '0';
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,354 @@
+package xcs.testbed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import xcs.Policy;
+import xcs.PopulationPolicy;
+
+/**
+ * The greedy policy of a population of binary StringConditions, compiled into a class generated
+ * for that population. Each condition becomes a mask-and-compare on the state packed into a long,
+ * grouped by action, with the votes and fitnesses of the classifiers as constants. The JIT then
+ * sees straight-line code rather than a loop over conditions.
+ *
+ * The class is generated as Java source, compiled with the system Java compiler and loaded by
+ * its own class loader, so it can be unloaded with the policy. Where there is no compiler (a JRE),
+ * the population is too large for one class, or compiling fails, the same masks are matched by
+ * an interpreted loop instead.
+ *
+ * Takes the best action of PopulationPolicy.chooseAction, and a random action in unmatched
+ * states, so for NXCS and RXCS, which sample actions by theta when evaluated, this is their
+ * greedy policy. Like PopulationPolicy it can be used from many threads at once. Only for
+ * binary states of the compiled length.
+ *
+ * @param <A> The type of actions this policy chooses
+ */
+public class CompiledStringPolicy<A> implements Policy<StringState, A> {
+
+	/* The most classifiers that are compiled into a class, keeping its constant pool well under the limit */
+	public static final int MAX_GENERATED_CLASSIFIERS = 4096;
+
+	/* The number of classifiers matched by each generated method, keeping each under the method size limit */
+	private static final int CLASSIFIERS_PER_METHOD = 256;
+
+	/* Numbers the generated classes */
+	private static final AtomicInteger generatedCount = new AtomicInteger();
+
+	/**
+	 * Sums the votes of the classifiers of a population that match a state
+	 */
+	public interface Matcher {
+		/**
+		 * Adds the vote and fitness of every classifier matching the given state to the sums of its action
+		 * @param state The state, packed by StringStateCodec
+		 * @param votes The summed vote of each action
+		 * @param fitness The summed fitness of each action, unchanged when voting by theta
+		 * @return Whether any classifier matches
+		 */
+		public boolean match(long state, double[] votes, double[] fitness);
+	}
+
+	/**
+	 * Matches the packed conditions of a population in a loop, when no class can be generated
+	 */
+	private static final class InterpretedMatcher implements Matcher {
+		private final long[] care;
+		private final long[] value;
+		private final int[] actions;
+		private final double[] votes;
+		private final double[] fitness;
+
+		InterpretedMatcher(long[] care, long[] value, int[] actions, double[] votes, double[] fitness){
+			this.care = care;
+			this.value = value;
+			this.actions = actions;
+			this.votes = votes;
+			this.fitness = fitness;
+		}
+
+		@Override
+		public boolean match(long state, double[] votes, double[] fitness){
+			boolean matched = false;
+			for(int i = 0;i < care.length;i ++){
+				if((state & care[i]) == value[i]){
+					votes[actions[i]] += this.votes[i];
+					fitness[actions[i]] += this.fitness[i];
+					matched = true;
+				}
+			}
+			return matched;
+		}
+	}
+
+	/**
+	 * Loads the classes compiled for one policy
+	 */
+	private static final class GeneratedClassLoader extends ClassLoader {
+		GeneratedClassLoader(ClassLoader parent){
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes){
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	private final PopulationPolicy<StringState, StringCondition, A> policy;
+	private final StringStateCodec codec;
+	private final Matcher matcher;
+	private final boolean generated;
+
+	private CompiledStringPolicy(PopulationPolicy<StringState, StringCondition, A> policy, StringStateCodec codec, Matcher matcher, boolean generated){
+		this.policy = policy;
+		this.codec = codec;
+		this.matcher = matcher;
+		this.generated = generated;
+	}
+
+	/**
+	 * Compiles the given policy
+	 * @param policy The policy to compile, such as one from XCS.toPolicy
+	 * @param length The number of bits (chars) in the states and conditions. Should be stateDim
+	 * @return The compiled policy
+	 * @throws IllegalArgumentException If a condition is not binary or not of the given length
+	 */
+	public static <A> CompiledStringPolicy<A> compile(PopulationPolicy<StringState, StringCondition, A> policy, int length){
+		StringStateCodec codec = new StringStateCodec(length);
+
+		//Classifiers ordered by action, keeping the population order within an action so that votes are summed in the same order
+		Integer[] order = new Integer[policy.size()];
+		for(int i = 0;i < order.length;i ++){
+			order[i] = i;
+		}
+		final PopulationPolicy<StringState, StringCondition, A> source = policy;
+		Arrays.sort(order, new Comparator<Integer>(){
+			@Override
+			public int compare(Integer c1, Integer c2){
+				return source.getActionIndex(c1) - source.getActionIndex(c2);
+			}
+		});
+
+		long[] care = new long[order.length];
+		long[] value = new long[order.length];
+		int[] actions = new int[order.length];
+		double[] votes = new double[order.length];
+		double[] fitness = new double[order.length];
+		for(int i = 0;i < order.length;i ++){
+			String condition = policy.getCondition(order[i]).getCondition();
+			if(condition.length() != length){
+				throw new IllegalArgumentException(String.format("Condition has %d bits, policy has %d", condition.length(), length));
+			}
+			for(int c = 0;c < length;c ++){
+				long bit = 1L << (length - 1 - c);
+				switch(condition.charAt(c)){
+				case '1':
+					value[i] |= bit;
+					care[i] |= bit;
+					break;
+				case '0':
+					care[i] |= bit;
+					break;
+				case StringCondition.wildcard:
+					break;
+				default:
+					throw new IllegalArgumentException("Not a binary condition: " + condition);
+				}
+			}
+			actions[i] = policy.getActionIndex(order[i]);
+			votes[i] = policy.getVote(order[i]);
+			fitness[i] = policy.getFitness(order[i]);
+		}
+
+		Matcher matcher = null;
+		if(order.length <= MAX_GENERATED_CLASSIFIERS){
+			String name = "GeneratedStringPolicy" + generatedCount.incrementAndGet();
+			matcher = generate(name, writeSource(name, care, value, actions, votes, fitness, policy.usesTheta()));
+		}
+		if(matcher == null){
+			return new CompiledStringPolicy<A>(policy, codec, new InterpretedMatcher(care, value, actions, votes, fitness), false);
+		}
+		return new CompiledStringPolicy<A>(policy, codec, matcher, true);
+	}
+
+	/**
+	 * @return Whether the conditions are matched by a generated class, rather than interpreted
+	 */
+	public boolean isGenerated(){
+		return generated;
+	}
+
+	@Override
+	public A getAction(StringState state){
+		int action = chooseAction(state, new double[policy.getNumActions()]);
+		if(action == -1)action = ThreadLocalRandom.current().nextInt(policy.getNumActions());
+		return policy.getAction(action);
+	}
+
+	/**
+	 * Finds the value of every action in the given state and chooses the best, as PopulationPolicy.chooseAction does
+	 * @return The position in the action set of the chosen action, or -1 if the state is unmatched
+	 */
+	public int chooseAction(StringState state, double[] values){
+		double[] FSA = new double[policy.getNumActions()];
+		Arrays.fill(values, 0, FSA.length, 0);
+		boolean matched = matcher.match(codec.encode(state), values, FSA);
+		return PopulationPolicy.selectAction(values, FSA, matched, policy.usesTheta());
+	}
+
+	/**
+	 * Writes the source of a Matcher that tests each classifier in turn
+	 */
+	private static String writeSource(String name, long[] care, long[] value, int[] actions, double[] votes, double[] fitness, boolean useTheta){
+		StringBuilder source = new StringBuilder();
+		source.append("public final class ").append(name).append(" implements ").append(Matcher.class.getCanonicalName()).append(" {\n");
+
+		int methods = (care.length + CLASSIFIERS_PER_METHOD - 1) / CLASSIFIERS_PER_METHOD;
+		source.append("\tpublic boolean match(long s, double[] v, double[] f){\n");
+		source.append("\t\tboolean m = false;\n");
+		for(int m = 0;m < methods;m ++){
+			source.append("\t\tm |= match").append(m).append("(s, v, f);\n");
+		}
+		source.append("\t\treturn m;\n");
+		source.append("\t}\n");
+
+		for(int m = 0;m < methods;m ++){
+			source.append("\tprivate static boolean match").append(m).append("(long s, double[] v, double[] f){\n");
+			source.append("\t\tboolean m = false;\n");
+			int end = Math.min(care.length, (m + 1) * CLASSIFIERS_PER_METHOD);
+			for(int i = m * CLASSIFIERS_PER_METHOD;i < end;i ++){
+				source.append("\t\t");
+				if(care[i] != 0){
+					source.append("if((s & 0x").append(Long.toHexString(care[i])).append("L) == 0x").append(Long.toHexString(value[i])).append("L)");
+				}
+				source.append("{ m = true; v[").append(actions[i]).append("] += ").append(literal(votes[i])).append(";");
+				if(!useTheta){
+					source.append(" f[").append(actions[i]).append("] += ").append(literal(fitness[i])).append(";");
+				}
+				source.append(" }\n");
+			}
+			source.append("\t\treturn m;\n");
+			source.append("\t}\n");
+		}
+
+		source.append("}\n");
+		return source.toString();
+	}
+
+	/**
+	 * @return A Java expression with exactly the given value
+	 */
+	private static String literal(double value){
+		if(Double.isNaN(value))return "Double.NaN";
+		if(Double.isInfinite(value))return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+		return Double.toHexString(value);
+	}
+
+	/**
+	 * Compiles the given source with the system Java compiler and creates an instance of its class
+	 * @return The Matcher, or null if it could not be compiled
+	 */
+	private static Matcher generate(final String name, final String source){
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if(compiler == null)return null;
+
+		final List<ByteArrayOutputStream> classes = new ArrayList<ByteArrayOutputStream>(1);
+		StandardJavaFileManager standardManager = compiler.getStandardFileManager(null, null, null);
+		JavaFileManager manager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardManager){
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling){
+				return new SimpleJavaFileObject(URI.create("mem:///" + className + kind.extension), kind){
+					@Override
+					public OutputStream openOutputStream(){
+						ByteArrayOutputStream out = new ByteArrayOutputStream();
+						classes.add(out);
+						return out;
+					}
+				};
+			}
+		};
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + name + Kind.SOURCE.extension), Kind.SOURCE){
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors){
+				return source;
+			}
+		};
+
+		try{
+			List<String> options = Arrays.asList("-g:none", "-classpath", getClassPath());
+			StringWriter errors = new StringWriter();
+			boolean compiled = compiler.getTask(errors, manager, null, options, null, Collections.singletonList(file)).call();
+			if(!compiled || classes.size() != 1){
+				System.err.println("Could not compile " + name + ", interpreting the population instead: ");
+				System.err.println(errors);
+				return null;
+			}
+
+			GeneratedClassLoader loader = new GeneratedClassLoader(Matcher.class.getClassLoader());
+			return (Matcher)loader.define(name, classes.get(0).toByteArray()).getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException e){
+			System.err.println("Could not load " + name + ", interpreting the population instead: ");
+			e.printStackTrace();
+			return null;
+		}
+		catch(RuntimeException e){
+			//The compiler reports problems it cannot recover from by throwing
+			System.err.println("Could not compile " + name + ", interpreting the population instead: ");
+			e.printStackTrace();
+			return null;
+		}
+		finally{
+			try{
+				manager.close();
+			}
+			catch(IOException e){
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return The class path of this JVM, with the location of the Matcher interface so that the
+	 * 			generated source can implement it
+	 */
+	private static String getClassPath(){
+		String classPath = System.getProperty("java.class.path", "");
+		CodeSource codeSource = Matcher.class.getProtectionDomain().getCodeSource();
+		if(codeSource != null && codeSource.getLocation() != null){
+			try{
+				classPath = new File(codeSource.getLocation().toURI()).getPath() + File.pathSeparator + classPath;
+			}
+			catch(URISyntaxException e){
+				//Fall back to the class path of the JVM alone
+			}
+			catch(IllegalArgumentException e){
+				//Not a file location. Fall back to the class path of the JVM alone
+			}
+		}
+		return classPath;
+	}
+}
@@ -0,0 +1,291 @@
+package xcs.testbed;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import xcs.Environment;
+import xcs.State;
+import xcs.XCS;
+import xcs.XCSConstants.UpdateMethod;
+import xcs.XCSConstantsBuilder;
+
+/**
+ * Generates random mazes for Maze and StochasticMaze, so that the scaling of XCS
+ * with the size of the world can be measured.
+ *
+ * Mazes are surrounded by obstacles like those in data/. The inside is built from
+ * 3x3 tiles of randomly placed obstacles. The aliasing level is the probability that a tile
+ * is a copy of one shared template tile rather than a new random one, so that distant
+ * cells with different distances to a goal perceive the same state.
+ * Open cells that cannot reach any goal are filled in.
+ */
+public class MazeGenerator {
+	private static final int TILE_SIZE = 3;
+
+	/* Attempts at laying out a maze before giving up, when too few cells are left open */
+	private static final int MAX_ATTEMPTS = 100;
+
+	private int width = 10;
+	private int height = 10;
+	private double density = 0.2;
+	private int goals = 1;
+	private double aliasing = 0;
+	private long seed = 0;
+
+	/**
+	 * Generates a maze with the current settings. The same settings always generate the same maze.
+	 * @return The generated maze
+	 * @throws IllegalStateException If no maze with enough open cells could be laid out
+	 */
+	public MazeGrid generate(){
+		Random random = new Random(seed);
+		for(int attempt = 0;attempt < MAX_ATTEMPTS;attempt ++){
+			byte[] cells = layout(random);
+			if(placeGoals(cells, random) && removeUnreachable(cells)){
+				return new MazeGrid(width, height, cells);
+			}
+		}
+		throw new IllegalStateException(String.format("Could not generate a %dx%d maze with density %.2f and %d goals", width, height, density, goals));
+	}
+
+	/**
+	 * Lays out the border and the obstacles inside it
+	 */
+	private byte[] layout(Random random){
+		byte[] cells = new byte[width * height];
+		boolean[] template = randomTile(random);
+		for(int ty = 1;ty < height - 1;ty += TILE_SIZE){
+			for(int tx = 1;tx < width - 1;tx += TILE_SIZE){
+				boolean[] tile = random.nextDouble() < aliasing ? template : randomTile(random);
+				for(int y = 0;y < TILE_SIZE && ty + y < height - 1;y ++){
+					for(int x = 0;x < TILE_SIZE && tx + x < width - 1;x ++){
+						cells[(ty + y) * width + tx + x] = tile[y * TILE_SIZE + x] ? MazeGrid.OBSTACLE : MazeGrid.OPEN;
+					}
+				}
+			}
+		}
+
+		for(int x = 0;x < width;x ++){
+			cells[x] = MazeGrid.OBSTACLE;
+			cells[(height - 1) * width + x] = MazeGrid.OBSTACLE;
+		}
+		for(int y = 0;y < height;y ++){
+			cells[y * width] = MazeGrid.OBSTACLE;
+			cells[y * width + width - 1] = MazeGrid.OBSTACLE;
+		}
+		return cells;
+	}
+
+	private boolean[] randomTile(Random random){
+		boolean[] tile = new boolean[TILE_SIZE * TILE_SIZE];
+		for(int i = 0;i < tile.length;i ++){
+			tile[i] = random.nextDouble() < density;
+		}
+		return tile;
+	}
+
+	/**
+	 * Turns random open cells into goals
+	 * @return Whether there were enough open cells
+	 */
+	private boolean placeGoals(byte[] cells, Random random){
+		int open = 0;
+		for(byte cell : cells){
+			if(cell == MazeGrid.OPEN)open ++;
+		}
+		//Leave at least one open cell to start from
+		if(open <= goals)return false;
+
+		for(int placed = 0;placed < goals;){
+			int cell = random.nextInt(cells.length);
+			if(cells[cell] == MazeGrid.OPEN){
+				cells[cell] = MazeGrid.FINAL;
+				placed ++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fills in every open cell that has no path to a goal, moving in any of the 8 directions
+	 * @return Whether any open cells are left
+	 */
+	private boolean removeUnreachable(byte[] cells){
+		boolean[] reached = new boolean[cells.length];
+		int[] queue = new int[cells.length];
+		int head = 0;
+		int tail = 0;
+		for(int i = 0;i < cells.length;i ++){
+			if(cells[i] == MazeGrid.FINAL){
+				reached[i] = true;
+				queue[tail ++] = i;
+			}
+		}
+
+		while(head < tail){
+			int cell = queue[head ++];
+			int cx = cell % width;
+			int cy = cell / width;
+			for(int y = cy - 1;y <= cy + 1;y ++){
+				for(int x = cx - 1;x <= cx + 1;x ++){
+					if(x < 0 || y < 0 || x >= width || y >= height)continue;
+					int next = y * width + x;
+					if(!reached[next] && cells[next] == MazeGrid.OPEN){
+						reached[next] = true;
+						queue[tail ++] = next;
+					}
+				}
+			}
+		}
+
+		boolean anyOpen = false;
+		for(int i = 0;i < cells.length;i ++){
+			if(cells[i] == MazeGrid.OPEN){
+				if(reached[i])anyOpen = true;
+				else cells[i] = MazeGrid.OBSTACLE;
+			}
+		}
+		return anyOpen;
+	}
+
+	public int getWidth(){
+		return width;
+	}
+
+	public int getHeight(){
+		return height;
+	}
+
+	/**
+	 * Sets the size of the maze, including the surrounding obstacles
+	 */
+	public void setSize(int width, int height){
+		if(width < 3 || height < 3)throw new IllegalArgumentException("Maze must be at least 3x3");
+		this.width = width;
+		this.height = height;
+	}
+
+	public double getDensity(){
+		return density;
+	}
+
+	/**
+	 * Sets the probability of each cell inside the border being an obstacle
+	 */
+	public void setDensity(double density){
+		if(density < 0 || density >= 1)throw new IllegalArgumentException("Density must be in [0, 1)");
+		this.density = density;
+	}
+
+	public int getGoals(){
+		return goals;
+	}
+
+	/**
+	 * Sets the number of final cells in the maze
+	 */
+	public void setGoals(int goals){
+		if(goals < 1)throw new IllegalArgumentException("Maze must have at least one goal");
+		this.goals = goals;
+	}
+
+	public double getAliasing(){
+		return aliasing;
+	}
+
+	/**
+	 * Sets the probability of each tile of the maze being a copy of the shared template tile
+	 */
+	public void setAliasing(double aliasing){
+		if(aliasing < 0 || aliasing > 1)throw new IllegalArgumentException("Aliasing must be in [0, 1]");
+		this.aliasing = aliasing;
+	}
+
+	public long getSeed(){
+		return seed;
+	}
+
+	public void setSeed(long seed){
+		this.seed = seed;
+	}
+
+	/**
+	 * Counts the steps taken in an environment
+	 */
+	private static class StepCounter<S extends State<?>, A> implements Environment<S, A> {
+		private final Environment<S, A> env;
+		private long steps;
+
+		StepCounter(Environment<S, A> env){
+			this.env = env;
+		}
+
+		@Override
+		public S getState(){
+			return env.getState();
+		}
+
+		@Override
+		public double getReward(S state, A action){
+			steps ++;
+			return env.getReward(state, action);
+		}
+
+		@Override
+		public boolean isFinalState(S state){
+			return env.isFinalState(state);
+		}
+	}
+
+	/**
+	 * Runs a ladder of increasingly large generated mazes, reporting the time per learning step and
+	 * the final number of macroclassifiers of XCS on each. Each maze is also written to log/mazes.
+	 */
+	public static void main(String[] args) throws IOException{
+		int[] sizes = {8, 16, 32, 64, 128};
+		int problems = 200;
+
+		XCSConstantsBuilder constants = new XCSConstantsBuilder();
+		constants.setSP(500);
+		constants.setSpecificityProbability(0.4);
+		constants.setStateDim(MazeGrid.PERCEPTION_BITS);
+		constants.setBeta(0.2);
+		constants.setGamma(0.7);
+		constants.setPexp(1);
+		constants.setChi(0.8);
+		constants.setMu(0.01);
+		constants.setThetaNma(8);
+		constants.setThetaGA(25);
+		constants.setE0(10);
+		constants.setThetaDel(20);
+		constants.setDoGASubsumption(false);
+		constants.setDoActionSetSubsumption(false);
+		constants.setUpdateMethod(UpdateMethod.NORMAL);
+
+		MazeGenerator generator = new MazeGenerator();
+		generator.setDensity(0.25);
+		generator.setAliasing(0.2);
+		generator.setSeed(1);
+
+		System.out.println("Size, Open Cells, Steps, ns/Step, Population Size");
+		for(int size : sizes){
+			generator.setSize(size, size);
+			//Keep the density of goals the same as the maze grows
+			generator.setGoals(Math.max(1, size * size / 256));
+			MazeGrid grid = generator.generate();
+			grid.writeText(new File(String.format("log/mazes/generated%d.txt", size)));
+
+			StepCounter<StringState, Maze.Action> maze = new StepCounter<StringState, Maze.Action>(new Maze(grid));
+			XCS<StringState, StringCondition, Maze.Action> xcs = new XCS<StringState, StringCondition, Maze.Action>(constants.build(), Maze.Action.values());
+
+			//Logging past the last goal skips the evaluation pass, whose steps do no learning and would be counted and timed
+			long start = System.nanoTime();
+			xcs.runXCSMultistep(maze, problems, problems + 1);
+			long elapsed = System.nanoTime() - start;
+
+			int population = xcs.toPolicy().size();
+			System.out.printf("%d, %d, %d, %.1f, %d%n", size, grid.getOpenCellCount(), maze.steps, elapsed / (double)maze.steps, population);
+		}
+	}
+}
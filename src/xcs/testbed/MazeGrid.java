@@ -0,0 +1,617 @@
+package xcs.testbed;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A compact, immutable maze used by Maze and StochasticMaze. Each cell is stored as
+ * one byte holding its 2 bit encoding, and the open and final cells are kept as arrays of
+ * cell indices, where cell (x, y) has index y * width + x.
+ *
+ * Mazes are read through a memory mapped file, in either the text format used in data/
+ * (the number of rows, then one row per line of 'O' open, 'T' obstacle and 'F' final cells),
+ * or a binary format for very large mazes with the cells packed 4 to a byte:
+ * <pre>
+ * int MAGIC, short VERSION, int width, int height, byte[(width * height + 3) / 4] cells
+ * </pre>
+ */
+public class MazeGrid {
+	/* The cell encodings. Each is the 2 bit value the agent perceives for that cell */
+	public static final byte OPEN = 0;      //00
+	public static final byte OBSTACLE = 1;  //01
+	public static final byte OUT_OF_BOUNDS = 2; //10
+	public static final byte FINAL = 3;     //11
+
+	static final int MAGIC = 0x5843534D; //XCSM
+	static final short VERSION = 1;
+
+	/* The number of bits in the perception of a cell, 2 for each of its 8 neighbours */
+	public static final int PERCEPTION_BITS = 16;
+
+	/* The 8 moves the agent can make, clockwise from north west. A slip to the left or right of a move is the previous or next one */
+	public static final int[] MOVE_X = {-1, 0, 1, 1, 1, 0, -1, -1};
+	public static final int[] MOVE_Y = {-1, -1, -1, 0, 1, 1, 1, 0};
+
+	private final int width;
+	private final int height;
+	private final byte[] cells;
+
+	/* The indices of the open and final cells */
+	private final int[] openCells;
+	private final int[] finalCells;
+
+	/* The packed encodings of the 8 neighbours of each cell, row by row from the top left */
+	private final char[] perception;
+
+	/* The fewest moves from each cell to a final cell, or -1 if no final cell can be reached */
+	private final int[] distances;
+
+	/**
+	 * Creates a new maze
+	 * @param width The number of columns
+	 * @param height The number of rows
+	 * @param cells The encoding of each cell, row by row. Copied.
+	 */
+	public MazeGrid(int width, int height, byte[] cells){
+		if(width <= 0 || height <= 0)throw new IllegalArgumentException("Maze must have at least one cell");
+		if(cells.length != width * height)throw new IllegalArgumentException("Expected " + (width * height) + " cells, got " + cells.length);
+		this.width = width;
+		this.height = height;
+		this.cells = cells.clone();
+
+		int open = 0;
+		int finals = 0;
+		for(byte cell : this.cells){
+			if(cell == OPEN)open ++;
+			else if(cell == FINAL)finals ++;
+			else if(cell != OBSTACLE)throw new IllegalArgumentException("Invalid maze cell encoding " + cell);
+		}
+
+		openCells = new int[open];
+		finalCells = new int[finals];
+		open = finals = 0;
+		for(int i = 0;i < this.cells.length;i ++){
+			if(this.cells[i] == OPEN)openCells[open ++] = i;
+			else if(this.cells[i] == FINAL)finalCells[finals ++] = i;
+		}
+
+		perception = new char[this.cells.length];
+		for(int y = 0;y < height;y ++){
+			for(int x = 0;x < width;x ++){
+				int bits = 0;
+				for(int yp = y - 1;yp <= y + 1;yp ++){
+					for(int xp = x - 1;xp <= x + 1;xp ++){
+						if(xp == x && yp == y)continue;
+						bits = (bits << 2) | getCell(xp, yp);
+					}
+				}
+				perception[y * width + x] = (char)bits;
+			}
+		}
+
+		distances = findDistances();
+	}
+
+	/**
+	 * Finds the distance of every cell to its nearest final cell with a breadth first search
+	 * out from all of the final cells at once. Moves are reversible, so this is also the
+	 * number of moves needed to reach a final cell.
+	 */
+	private int[] findDistances(){
+		int[] distance = new int[cells.length];
+		Arrays.fill(distance, -1);
+		int[] queue = new int[cells.length];
+		int head = 0;
+		int tail = 0;
+		for(int cell : finalCells){
+			distance[cell] = 0;
+			queue[tail ++] = cell;
+		}
+
+		while(head < tail){
+			int cell = queue[head ++];
+			int x = cell % width;
+			int y = cell / width;
+			for(int m = 0;m < MOVE_X.length;m ++){
+				int nx = x + MOVE_X[m];
+				int ny = y + MOVE_Y[m];
+				if(!isPassable(nx, ny))continue;
+				int next = ny * width + nx;
+				if(distance[next] == -1){
+					distance[next] = distance[cell] + 1;
+					queue[tail ++] = next;
+				}
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * Reads a maze in either the text or binary format
+	 * @param file The file to read
+	 * @return The maze in the file
+	 * @throws IOException If the file cannot be read or is not a valid maze
+	 */
+	public static MazeGrid load(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.remaining() >= 4 && buffer.getInt(0) == MAGIC){
+				return readBinary(buffer, file);
+			}
+			return readText(buffer, file);
+		}
+		finally{
+			raf.close();
+		}
+	}
+
+	private static MazeGrid readBinary(MappedByteBuffer buffer, File file) throws IOException{
+		buffer.position(4);
+		short version = buffer.getShort();
+		if(version != VERSION)throw new IOException("Unsupported maze version " + version + " in " + file);
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		long count = (long)width * height;
+		if(width <= 0 || height <= 0 || count > Integer.MAX_VALUE || buffer.remaining() < (count + 3) / 4){
+			throw new IOException("Invalid maze size " + width + "x" + height + " in " + file);
+		}
+
+		byte[] cells = new byte[(int)count];
+		for(int i = 0;i < cells.length;i += 4){
+			int packed = buffer.get();
+			for(int j = 0;j < 4 && i + j < cells.length;j ++){
+				cells[i + j] = (byte)((packed >>> (6 - 2 * j)) & 3);
+			}
+		}
+		return new MazeGrid(width, height, cells);
+	}
+
+	private static MazeGrid readText(MappedByteBuffer buffer, File file) throws IOException{
+		int height = 0;
+		byte b = nextNonSpace(buffer);
+		while(b >= '0' && b <= '9'){
+			height = height * 10 + (b - '0');
+			b = buffer.hasRemaining() ? buffer.get() : (byte)'\n';
+		}
+		if(height <= 0)throw new IOException("Maze file does not start with its number of rows: " + file);
+
+		int width = -1;
+		byte[] cells = null;
+		int index = 0;
+		for(int y = 0;y < height;y ++){
+			skipLineBreaks(buffer);
+			int start = buffer.position();
+			while(buffer.hasRemaining()){
+				b = buffer.get(buffer.position());
+				if(b == '\n' || b == '\r')break;
+				buffer.get();
+			}
+			int length = buffer.position() - start;
+
+			if(width == -1){
+				width = length;
+				if(width == 0)throw new IOException("Maze has an empty row: " + file);
+				cells = new byte[width * height];
+			}
+			else if(length != width){
+				throw new IOException("Maze row " + y + " has " + length + " cells, expected " + width + ": " + file);
+			}
+
+			for(int x = 0;x < width;x ++){
+				switch(buffer.get(start + x)){
+				case 'O': cells[index ++] = OPEN; break;
+				case 'T': cells[index ++] = OBSTACLE; break;
+				case 'F': cells[index ++] = FINAL; break;
+				default:
+					throw new IOException("Maze row " + y + " contains invalid char (" + (char)buffer.get(start + x) + "): " + file);
+				}
+			}
+		}
+		return new MazeGrid(width, height, cells);
+	}
+
+	private static byte nextNonSpace(MappedByteBuffer buffer){
+		while(buffer.hasRemaining()){
+			byte b = buffer.get();
+			if(b != ' ' && b != '\t' && b != '\r' && b != '\n')return b;
+		}
+		return 0;
+	}
+
+	private static void skipLineBreaks(MappedByteBuffer buffer){
+		while(buffer.hasRemaining()){
+			byte b = buffer.get(buffer.position());
+			if(b != '\n' && b != '\r')return;
+			buffer.get();
+		}
+	}
+
+	/**
+	 * Writes this maze in the binary format
+	 * @param file The file to write to
+	 */
+	public void write(File file) throws IOException{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)parent.mkdirs();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try{
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeInt(width);
+			out.writeInt(height);
+			for(int i = 0;i < cells.length;i += 4){
+				int packed = 0;
+				for(int j = 0;j < 4;j ++){
+					int cell = i + j < cells.length ? cells[i + j] : 0;
+					packed |= cell << (6 - 2 * j);
+				}
+				out.write(packed);
+			}
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes this maze in the text format used by the files in data/
+	 * @param file The file to write to
+	 */
+	public void writeText(File file) throws IOException{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)parent.mkdirs();
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try{
+			out.write(String.valueOf(height));
+			out.write('\n');
+			char[] row = new char[width];
+			for(int y = 0;y < height;y ++){
+				for(int x = 0;x < width;x ++){
+					switch(cells[y * width + x]){
+					case OPEN: row[x] = 'O'; break;
+					case OBSTACLE: row[x] = 'T'; break;
+					case FINAL: row[x] = 'F'; break;
+					}
+				}
+				out.write(row);
+				out.write('\n');
+			}
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	public int getWidth(){
+		return width;
+	}
+
+	public int getHeight(){
+		return height;
+	}
+
+	/**
+	 * @return The encoding of the given cell, or OUT_OF_BOUNDS if it is outside the maze
+	 */
+	public byte getCell(int x, int y){
+		if(x < 0 || y < 0 || x >= width || y >= height)return OUT_OF_BOUNDS;
+		return cells[y * width + x];
+	}
+
+	/**
+	 * @return Whether the agent can move onto the given cell
+	 */
+	public boolean isPassable(int x, int y){
+		byte cell = getCell(x, y);
+		return cell == OPEN || cell == FINAL;
+	}
+
+	/**
+	 * @return Whether the given cell is a final state
+	 */
+	public boolean isFinal(int x, int y){
+		return getCell(x, y) == FINAL;
+	}
+
+	/**
+	 * @return The encodings of the 8 neighbours of the given cell, packed 2 bits each
+	 * 			row by row from the top left. The cell must be inside the maze.
+	 */
+	public int getPerception(int x, int y){
+		return perception[y * width + x];
+	}
+
+	/**
+	 * @return The fewest moves from the given cell to a final cell, or -1 if none can be reached
+	 */
+	public int getDistance(int x, int y){
+		return distances[y * width + x];
+	}
+
+	/**
+	 * @return The average of the fewest moves to a final cell, over the open cells that can reach one
+	 */
+	public double getAverageOptimalSteps(){
+		long total = 0;
+		int count = 0;
+		for(int cell : openCells){
+			if(distances[cell] >= 0){
+				total += distances[cell];
+				count ++;
+			}
+		}
+		return count == 0 ? 0 : total / (double)count;
+	}
+
+	/**
+	 * Calculates the expected number of moves between reaching final cells when following the given
+	 * policy, as the agent of Maze and StochasticMaze is moved:
+	 * <ul>
+	 * <li>On reaching a final cell, the agent chooses its next move there, but is moved to an open
+	 * cell chosen at random before making it. This is the first move of the next episode.</li>
+	 * <li>An episode that has not reached a final cell after horizon moves is abandoned, and the
+	 * agent moved to a new random open cell, where it carries on counting moves.</li>
+	 * </ul>
+	 * Which final cell ends an episode decides how the next one starts, so the result is averaged
+	 * over the long run share of episodes ending at each final cell.
+	 *
+	 * With probability slip each move instead goes one direction to the left or right of the chosen
+	 * move, with equal chance. Moves into obstacles or out of the maze leave the agent where it is.
+	 * @param moveProbabilities The probability of choosing each move in each open cell, 8 per cell in the order
+	 * 			of MOVE_X and MOVE_Y, and the cells in the order of getOpenCell
+	 * @param finalMoveProbabilities The probability of choosing each move on reaching each final cell, 8 per
+	 * 			cell in the order of getFinalCell
+	 * @param slip The probability of a move slipping
+	 * @param horizon The number of moves after which an episode is abandoned
+	 * @return The expected number of moves per final cell reached, or positive infinity if the agent
+	 * 			can be left never reaching one
+	 */
+	public double getAverageSteps(double[] moveProbabilities, double[] finalMoveProbabilities, double slip, int horizon){
+		int numMoves = MOVE_X.length;
+		if(moveProbabilities.length < openCells.length * numMoves){
+			throw new IllegalArgumentException("Expected " + (openCells.length * numMoves) + " move probabilities, got " + moveProbabilities.length);
+		}
+		if(finalMoveProbabilities.length < finalCells.length * numMoves){
+			throw new IllegalArgumentException("Expected " + (finalCells.length * numMoves) + " final move probabilities, got " + finalMoveProbabilities.length);
+		}
+		if(horizon <= 0)throw new IllegalArgumentException("Horizon must be positive");
+		if(openCells.length == 0 || finalCells.length == 0)return Double.POSITIVE_INFINITY;
+
+		//Final cells that choose the same first move lead to the same kind of episode, so only their groups are followed
+		int[] groupOf = new int[finalCells.length];
+		int[] groupFirst = new int[finalCells.length];
+		int numGroups = 0;
+		for(int f = 0;f < finalCells.length;f ++){
+			groupOf[f] = -1;
+			for(int g = 0;g < numGroups && groupOf[f] == -1;g ++){
+				if(sameMoves(finalMoveProbabilities, groupFirst[g] * numMoves, f * numMoves))groupOf[f] = g;
+			}
+			if(groupOf[f] == -1){
+				groupFirst[numGroups] = f;
+				groupOf[f] = numGroups ++;
+			}
+		}
+
+		double[] outcomes = slipMoves(moveProbabilities, openCells.length, slip);
+		double[] firstOutcomes = slipMoves(finalMoveProbabilities, finalCells.length, slip);
+		int[] targets = new int[openCells.length * numMoves];
+		for(int i = 0;i < openCells.length;i ++){
+			for(int m = 0;m < numMoves;m ++){
+				targets[i * numMoves + m] = target(openCells[i], m);
+			}
+		}
+
+		//Within the remaining moves of an episode: the expected moves made, and the chance of it ending
+		//at each group of final cells. Episodes on final cells have ended
+		double[] steps = new double[cells.length];
+		double[][] ends = new double[numGroups][cells.length];
+		double[] nextSteps = new double[cells.length];
+		double[][] nextEnds = new double[numGroups][cells.length];
+		for(int f = 0;f < finalCells.length;f ++){
+			ends[groupOf[f]][finalCells[f]] = nextEnds[groupOf[f]][finalCells[f]] = 1;
+		}
+
+		//The episode after the first move is followed for one less move than a whole episode
+		double[] firstSteps = null;
+		double[][] firstEnds = null;
+		for(int k = 0;k < horizon;k ++){
+			if(k == horizon - 1){
+				firstSteps = steps.clone();
+				firstEnds = new double[numGroups][];
+				for(int g = 0;g < numGroups;g ++){
+					firstEnds[g] = ends[g].clone();
+				}
+			}
+
+			for(int i = 0;i < openCells.length;i ++){
+				int base = i * numMoves;
+				double expected = 1;
+				for(int m = 0;m < numMoves;m ++){
+					double p = outcomes[base + m];
+					if(p > 0)expected += p * steps[targets[base + m]];
+				}
+				nextSteps[openCells[i]] = expected;
+				for(int g = 0;g < numGroups;g ++){
+					double chance = 0;
+					for(int m = 0;m < numMoves;m ++){
+						double p = outcomes[base + m];
+						if(p > 0)chance += p * ends[g][targets[base + m]];
+					}
+					nextEnds[g][openCells[i]] = chance;
+				}
+			}
+			double[] swap = steps;
+			steps = nextSteps;
+			nextSteps = swap;
+			double[][] swapEnds = ends;
+			ends = nextEnds;
+			nextEnds = swapEnds;
+		}
+
+		//An episode after being moved for running out of moves, from a random open cell
+		double restartSteps = 0;
+		double[] restartEnds = new double[numGroups];
+		double restartReached = 0;
+		for(int cell : openCells){
+			restartSteps += steps[cell];
+			for(int g = 0;g < numGroups;g ++){
+				restartEnds[g] += ends[g][cell];
+			}
+		}
+		restartSteps /= openCells.length;
+		for(int g = 0;g < numGroups;g ++){
+			restartEnds[g] /= openCells.length;
+			restartReached += restartEnds[g];
+		}
+
+		//The moves from reaching a final cell in each group to reaching the next, and which group that is
+		double[] cycleSteps = new double[numGroups];
+		double[][] transitions = new double[numGroups][numGroups];
+		for(int g = 0;g < numGroups;g ++){
+			int first = groupFirst[g] * numMoves;
+			double episodeSteps = 0;
+			double[] episodeEnds = new double[numGroups];
+			for(int i = 0;i < openCells.length;i ++){
+				int base = i * numMoves;
+				episodeSteps += 1;
+				for(int m = 0;m < numMoves;m ++){
+					double p = firstOutcomes[first + m];
+					if(p <= 0)continue;
+					int cell = targets[base + m];
+					episodeSteps += p * firstSteps[cell];
+					for(int h = 0;h < numGroups;h ++){
+						episodeEnds[h] += p * firstEnds[h][cell];
+					}
+				}
+			}
+
+			double unfinished = 1;
+			for(int h = 0;h < numGroups;h ++){
+				episodeEnds[h] /= openCells.length;
+				unfinished -= episodeEnds[h];
+			}
+			cycleSteps[g] = episodeSteps / openCells.length;
+			if(unfinished > 1e-12){
+				//Restarted episodes are repeated until one ends
+				if(restartReached <= 0)return Double.POSITIVE_INFINITY;
+				cycleSteps[g] += unfinished * restartSteps / restartReached;
+			}
+			for(int h = 0;h < numGroups;h ++){
+				transitions[g][h] = episodeEnds[h] + (unfinished > 1e-12 ? unfinished * restartEnds[h] / restartReached : 0);
+			}
+		}
+
+		double[] share = getLongRunShares(transitions);
+		double average = 0;
+		for(int g = 0;g < numGroups;g ++){
+			average += share[g] * cycleSteps[g];
+		}
+		return average;
+	}
+
+	/**
+	 * @return Whether the 8 move probabilities at the two positions are the same
+	 */
+	private static boolean sameMoves(double[] probabilities, int a, int b){
+		for(int m = 0;m < MOVE_X.length;m ++){
+			if(probabilities[a + m] != probabilities[b + m])return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The chance of actually making each move, 8 per cell, after choices slip to either side
+	 */
+	private static double[] slipMoves(double[] probabilities, int count, double slip){
+		int numMoves = MOVE_X.length;
+		double[] outcomes = new double[count * numMoves];
+		for(int i = 0;i < count;i ++){
+			int base = i * numMoves;
+			for(int m = 0;m < numMoves;m ++){
+				double p = probabilities[base + m];
+				outcomes[base + m] += p * (1 - slip);
+				outcomes[base + (m + numMoves - 1) % numMoves] += p * slip / 2;
+				outcomes[base + (m + 1) % numMoves] += p * slip / 2;
+			}
+		}
+		return outcomes;
+	}
+
+	/**
+	 * Finds how often, in the long run, a Markov chain is in each of its states, by repeatedly
+	 * stepping a lazy copy of it, which has the same shares but cannot cycle
+	 * @param transitions The chance of moving from each state to each other
+	 * @return The share of time spent in each state, starting equally likely in each
+	 */
+	private static double[] getLongRunShares(double[][] transitions){
+		int n = transitions.length;
+		double[] share = new double[n];
+		Arrays.fill(share, 1.0 / n);
+		if(n == 1)return share;
+
+		double[] next = new double[n];
+		for(int iteration = 0;iteration < 100000;iteration ++){
+			for(int j = 0;j < n;j ++){
+				next[j] = share[j] / 2;
+			}
+			for(int i = 0;i < n;i ++){
+				for(int j = 0;j < n;j ++){
+					next[j] += share[i] * transitions[i][j] / 2;
+				}
+			}
+
+			double change = 0;
+			for(int j = 0;j < n;j ++){
+				change = Math.max(change, Math.abs(next[j] - share[j]));
+			}
+			double[] swap = share;
+			share = next;
+			next = swap;
+			if(change < 1e-13)break;
+		}
+		return share;
+	}
+
+	/**
+	 * @return The cell the agent ends up in after making the given move from the given cell
+	 */
+	private int target(int cell, int move){
+		int x = cell % width + MOVE_X[move];
+		int y = cell / width + MOVE_Y[move];
+		return isPassable(x, y) ? y * width + x : cell;
+	}
+
+	public int getOpenCellCount(){
+		return openCells.length;
+	}
+
+	/**
+	 * @return The index (y * width + x) of the i'th open cell
+	 */
+	public int getOpenCell(int i){
+		return openCells[i];
+	}
+
+	public int getFinalCellCount(){
+		return finalCells.length;
+	}
+
+	/**
+	 * @return The index (y * width + x) of the i'th final cell
+	 */
+	public int getFinalCell(int i){
+		return finalCells[i];
+	}
+}
@@ -0,0 +1,172 @@
+package xcs.testbed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import xcs.EnumerableEnvironment;
+import xcs.XCS;
+import xcs.XCSConstants;
+import xcs.XCSConstants.UpdateMethod;
+import xcs.XCSConstantsBuilder;
+import xcs.stats.ChartRenderer;
+import xcs.stats.StatsLogger;
+
+/**
+ * The Boolean multiplexer with k address bits followed by 2^k data bits, on packed BitStates.
+ * The address is read most significant bit first, and the correct action is the value of
+ * the addressed data bit. k = 2 to 7 gives the 6, 11, 20, 37, 70 and 135 bit multiplexers.
+ */
+public class Multiplexer implements EnumerableEnvironment<BitState, Integer>{
+	public static final int MIN_ADDRESS_BITS = 2;
+	public static final int MAX_ADDRESS_BITS = 7;
+
+	/* The largest number of bits for which every state is enumerated */
+	private static final int MAX_ENUMERABLE_BITS = 20;
+
+	/* Population sizes and learning problems for each k, from the usual multiplexer benchmarks */
+	private static final int[] populationSizes = {0, 0, 400, 800, 2000, 5000, 10000, 20000};
+	private static final int[] learningProblems = {0, 0, 20000, 50000, 200000, 1000000, 3000000, 10000000};
+
+	private static final int trials = 10;
+	private static final int evaluationProblems = 10000;
+
+	private final int k;
+	private final int numBits;
+	private final long lastWordMask;
+	private final Random random;
+
+	/* Every state of the multiplexer, created when first enumerated */
+	private List<BitState> allStates;
+
+	/**
+	 * @param k The number of address bits, from 2 to 7
+	 * @param seed The seed for the generated states
+	 */
+	public Multiplexer(int k, long seed){
+		if(k < MIN_ADDRESS_BITS || k > MAX_ADDRESS_BITS){
+			throw new IllegalArgumentException(String.format("k must be between %d and %d", MIN_ADDRESS_BITS, MAX_ADDRESS_BITS));
+		}
+		this.k = k;
+		numBits = k + (1 << k);
+		lastWordMask = BitState.lastWordMask(numBits);
+		random = new Random(seed);
+	}
+
+	public Multiplexer(int k){
+		this(k, System.nanoTime());
+	}
+
+	public int getAddressBits(){
+		return k;
+	}
+
+	/**
+	 * @return The length of the states of this multiplexer, k + 2^k
+	 */
+	public int getNumBits(){
+		return numBits;
+	}
+
+	/**
+	 * @return The value of the data bit selected by the address bits of the given state
+	 */
+	public int getOutput(BitState state){
+		//Reversing puts bit 0 (the most significant address bit) at the top of the word
+		int address = (int)(Long.reverse(state.getWord(0)) >>> (64 - k));
+		return state.getBit(k + address) ? 1 : 0;
+	}
+
+	@Override
+	public BitState getState() {
+		long[] bits = new long[BitState.words(numBits)];
+		for(int i = 0;i < bits.length;i ++){
+			bits[i] = random.nextLong();
+		}
+		bits[bits.length - 1] &= lastWordMask;
+
+		return new BitState(bits, numBits);
+	}
+
+	@Override
+	public double getReward(BitState state, Integer action) {
+		return getOutput(state) == action.intValue() ? 1.0 : 0;
+	}
+
+	@Override
+	public boolean isFinalState(BitState state) {
+		return false;
+	}
+
+	@Override
+	public synchronized List<BitState> enumerateStates() {
+		if(numBits > MAX_ENUMERABLE_BITS)return null;
+		if(allStates == null){
+			List<BitState> states = new ArrayList<BitState>(1 << numBits);
+			for(int i = 0;i < (1 << numBits);i ++){
+				states.add(new BitState(i, numBits));
+			}
+			allStates = Collections.unmodifiableList(states);
+		}
+		return allStates;
+	}
+
+	/**
+	 * Runs XCS on the multiplexer with the number of address bits given as the first argument (default 3).
+	 * The number of learning problems can be overridden by the second argument.
+	 */
+	public static void main(String[] args){
+		int k = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		//Checks k before it is used to look up the defaults
+		Multiplexer template = new Multiplexer(k);
+		int problems = args.length > 1 ? Integer.parseInt(args[1]) : learningProblems[k];
+		int numBits = template.getNumBits();
+
+		Integer[] actions = {0, 1};
+
+		XCSConstantsBuilder constants = new XCSConstantsBuilder();
+		constants.setStateDim(numBits);
+		constants.setRho0(1);
+		constants.setE0(0.001);
+		constants.setSP(populationSizes[k]);
+		constants.setThetaNma(2);
+		constants.setPhi(0);
+		constants.setGamma(0);
+		constants.setUpdateMethod(UpdateMethod.NORMAL);
+		constants.setUseExactEvaluation(true);
+		XCSConstants cons = constants.build();
+
+		StatsLogger logger = new StatsLogger(false);
+		double sum = 0;
+		for(int i = 0;i < trials;i ++){
+			Multiplexer problem = new Multiplexer(k, i);
+			XCS<BitState, BitCondition, Integer> xcs = new XCS<BitState, BitCondition, Integer>(cons, actions);
+
+			long start = System.nanoTime();
+			xcs.runXCSSingleStep(problem, problems, Math.max(100, problems / 200));
+			long elapsed = System.nanoTime() - start;
+
+			logger.logRun(xcs.getStats());
+			double result;
+			if(problem.enumerateStates() != null){
+				result = xcs.runXCSEvaluationExhaustive(problem);
+			}
+			else{
+				result = xcs.runXCSEvaluationSingleStep(problem, evaluationProblems) / evaluationProblems;
+			}
+			sum += result;
+			System.out.printf("Run %d: %.4f correct, %.2fs%n", i + 1, result, elapsed / 1e9);
+		}
+
+		System.out.printf("%d bit multiplexer average: %.4f%n", numBits, sum / trials);
+		try{
+			logger.writeChartsAsSinglePlot("log/charts/Multiplexer/" + numBits + "/<CHART_TITLE>.png", numBits + " bit Multiplexer", "Correct");
+			ChartRenderer.getDefault().awaitCompletion();
+		}
+		catch(IOException e){
+			e.printStackTrace();
+		}
+	}
+}
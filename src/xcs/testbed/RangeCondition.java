@@ -2,29 +2,107 @@ package xcs.testbed;
 
 import xcs.Condition;
 
+/**
+ * A condition of one interval per dimension of a RealState. The bounds are held in flat
+ * arrays, and the dimensions whose interval covers [0, 1] (the wildcards) are cached as a bit mask
+ * that is kept up to date by mutation and crossover.
+ */
 public class RangeCondition implements Condition<RealState, RangeCondition>{
 
-	Range[] ranges;
+	/* The exclusive lower and upper bound of the interval in each dimension */
+	private final double[] lower;
+	private final double[] upper;
 
+	/* Bit i is set if dimension i is a wildcard */
+	private final long[] wildcards;
+	private int wildcardCount;
+
+	/**
+	 * Creates a condition from the given ranges. The ranges are copied, so later changes to them
+	 * do not affect this condition.
+	 */
 	public RangeCondition(Range[] ranges){
-		this.ranges = ranges;
+		lower = new double[ranges.length];
+		upper = new double[ranges.length];
+		for(int i = 0;i < ranges.length;i ++){
+			lower[i] = ranges[i].getMin();
+			upper[i] = ranges[i].getMax();
+		}
+		wildcards = new long[(ranges.length + 63) >>> 6];
+		updateWildcards();
+	}
+
+	/**
+	 * Creates a condition from the given bounds, which are copied.
+	 * @param lower The exclusive lower bound of each dimension
+	 * @param upper The exclusive upper bound of each dimension
+	 */
+	public RangeCondition(double[] lower, double[] upper){
+		if(lower.length != upper.length)throw new IllegalArgumentException("Bounds must have the same length");
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+		wildcards = new long[(lower.length + 63) >>> 6];
+		updateWildcards();
+	}
+
+	/**
+	 * @return The number of dimensions in this condition
+	 */
+	public int getLength(){
+		return lower.length;
+	}
+
+	public double getLower(int dimension){
+		return lower[dimension];
+	}
+
+	public double getUpper(int dimension){
+		return upper[dimension];
+	}
+
+	/**
+	 * @return A copy of the interval in the given dimension
+	 */
+	public Range getRange(int dimension){
+		return Range.fromMinMax(lower[dimension], upper[dimension]);
+	}
+
+	private void updateWildcards(){
+		wildcardCount = 0;
+		for(int i = 0;i < wildcards.length;i ++)wildcards[i] = 0;
+		for(int i = 0;i < lower.length;i ++){
+			if(lower[i] <= 0 && upper[i] >= 1){
+				wildcards[i >>> 6] |= 1L << i;
+				wildcardCount ++;
+			}
+		}
+	}
+
+	private void setCenterStretch(int dimension, double center, double stretch){
+		lower[dimension] = center - stretch;
+		upper[dimension] = center + stretch;
 	}
 
 	@Override
 	public void mutate(RealState state, double mu) {
-		for(int i = 0;i < ranges.length;i ++){
-			Range range = ranges[i];
+		for(int i = 0;i < lower.length;i ++){
+			double center = (lower[i] + upper[i]) / 2;
+			double stretch = (upper[i] - lower[i]) / 2;
+			boolean changed = false;
 			if(Math.random() < mu){
 				//-0.1 < change < 0.1
-				double change = (Math.random() < 0.5 ? 1 : -1) * (Math.random() * 0.1);
-				ranges[i].setCenter(range.getCenter() + change);
+				center += (Math.random() < 0.5 ? 1 : -1) * (Math.random() * 0.1);
+				changed = true;
 			}
 
 			if(Math.random() < mu){
-				double change = (Math.random() < 0.5 ? 1 : -1) * (Math.random() * 0.1);
-				ranges[i].setStretch(range.getStretch() + change);
+				stretch += (Math.random() < 0.5 ? 1 : -1) * (Math.random() * 0.1);
+				changed = true;
 			}
+
+			if(changed)setCenterStretch(i, center, stretch);
 		}
+		updateWildcards();
 	}
 
 	/**
@@ -34,8 +112,8 @@ public class RangeCondition implements Condition<RealState, RangeCondition>{
 	 */
 	@Override
 	public void crossover(RangeCondition c2) {
-		int x = (int)(Math.random() * (ranges.length + 1));
-		int y = (int)(Math.random() * (ranges.length + 1));
+		int x = (int)(Math.random() * (lower.length + 1));
+		int y = (int)(Math.random() * (lower.length + 1));
 		if(x > y){
 			//Swap x and y
 			int temp = x;
@@ -43,105 +121,65 @@ public class RangeCondition implements Condition<RealState, RangeCondition>{
 			y = temp;
 		}
 
+		//0 = center 1 = stretch 2 = c2.center 3 = c2.stretch
+		double[] alleles = new double[4];
 		for(int i = x;i < y;++ i){
-			if(x <= i && i < y){
-				Range r1 = ranges[i];
-				Range r2 = c2.ranges[i];
-				//Equiprobable to swap any of the combinations of center and stretch
-				//0 = center 1 = stretch 2 = c2.center 3 = c2.stretch
-				int allele1 = 0;
-				int allele2 = 0;
-				do{
-					allele1 = (int)(Math.random() * 4);
-					allele2 = (int)(Math.random() * 4);
-				}while(allele1 == allele2);
-
-				if(allele1 > allele2){
-					int temp = allele1;
-					allele1 = allele2;
-					allele2 = temp;
-				}
-
-				double temp = -1;
-				switch(allele1){
-				case 0:
-					temp = r1.getCenter();
-					break;
-				case 1:
-					temp = r1.getStretch();
-					break;
-				case 2:
-					temp = r2.getCenter();
-					break;
-				}
-
-				if(allele1 == 0 && allele2 == 1){
-					//Swap center and stretch
-					r1.setCenter(r1.getStretch());
-					r1.setStretch(temp);
-				}
-				else if(allele1 == 0 && allele2 == 2){
-					//Swap center and c2.center
-					r1.setStretch(r2.getCenter());
-					r2.setCenter(temp);
-				}
-				else if(allele1 == 0 && allele2 == 3){
-					//Swap center and c2.stretch
-					r1.setCenter(r2.getStretch());
-					r2.setStretch(temp);
-				}
-				else if(allele1 == 1 && allele2 == 2){
-					//Swap stretch and c2.center
-					r1.setStretch(r2.getCenter());
-					r2.setCenter(temp);
-				}
-				else if(allele1 == 1 && allele2 == 3){
-					//Swap stretch and c2.stretch
-					r1.setStretch(r2.getStretch());
-					r2.setStretch(temp);
-				}
-				else if(allele1 == 2 && allele2 == 3){
-					//Swap c2.center and c2.stretch
-					r2.setCenter(r2.getStretch());
-					r2.setStretch(temp);
-				}
-			}
+			alleles[0] = (lower[i] + upper[i]) / 2;
+			alleles[1] = (upper[i] - lower[i]) / 2;
+			alleles[2] = (c2.lower[i] + c2.upper[i]) / 2;
+			alleles[3] = (c2.upper[i] - c2.lower[i]) / 2;
+
+			//Equiprobable to swap any of the combinations of center and stretch
+			int allele1 = 0;
+			int allele2 = 0;
+			do{
+				allele1 = (int)(Math.random() * 4);
+				allele2 = (int)(Math.random() * 4);
+			}while(allele1 == allele2);
+
+			double temp = alleles[allele1];
+			alleles[allele1] = alleles[allele2];
+			alleles[allele2] = temp;
+
+			setCenterStretch(i, alleles[0], alleles[1]);
+			c2.setCenterStretch(i, alleles[2], alleles[3]);
 		}
+		updateWildcards();
+		c2.updateWildcards();
 	}
 
 	@Override
 	public boolean matchesState(RealState state) {
-		for(int i = 0;i < ranges.length;i ++){
-			if(!ranges[i].contains(state.getBitAt(i)))return false;
+		double[] values = state.getValues();
+		if(values.length < lower.length)return false;
+
+		for(int i = 0;i < lower.length;i ++){
+			double value = values[i];
+			if(!(value > lower[i] & value < upper[i]))return false;
 		}
 		return true;
 	}
 
+	/**
+	 * @return Whether the interval in the given dimension covers all of [0, 1]
+	 */
 	@Override
 	public boolean isWildcardAtBit(int bit) {
-		Range range = ranges[bit];
-		return range.contains(new Range(0.5, 0.5));
+		return (wildcards[bit >>> 6] & (1L << bit)) != 0;
 	}
 
 	@Override
 	public int wildcardCount() {
-		int count = 0;
-		for(int i = 0;i < ranges.length;i ++){
-			if(isWildcardAtBit(i))++count;
-		}
-
-		return count;
+		return wildcardCount;
 	}
 
 	@Override
 	public boolean isMoreGeneral(RangeCondition specific) {
-		int wildcardGeneralCount = wildcardCount();
-		int wildcardSpecificCount = specific.wildcardCount();
-
-		if(wildcardGeneralCount <= wildcardSpecificCount)return false;
+		if(wildcardCount <= specific.wildcardCount)return false;
 
-		for(int i = 0;i < ranges.length;i ++){
-			if(!(isWildcardAtBit(i) || ranges[i].contains(specific.ranges[i]))){
+		for(int i = 0;i < lower.length;i ++){
+			if(isWildcardAtBit(i))continue;
+			if(specific.lower[i] < lower[i] || specific.upper[i] > upper[i]){
 				return false;
 			}
 		}
@@ -151,17 +189,15 @@ public class RangeCondition implements Condition<RealState, RangeCondition>{
 
 	@Override
 	public RangeCondition clone(){
-		Range[] range = new Range[ranges.length];
-		for(int i = 0;i < range.length;i ++)range[i] = new Range(ranges[i].getCenter(), ranges[i].getStretch());
-		return new RangeCondition(range);
+		return new RangeCondition(lower, upper);
 	}
 
 	@Override
 	public String toString(){
 		StringBuilder build = new StringBuilder();
-		for(int i = 0;i < ranges.length;i ++){
+		for(int i = 0;i < lower.length;i ++){
 			if(isWildcardAtBit(i))build.append("*");
-			else build.append(ranges[i]);
+			else build.append(String.format("[%3.2f -> %3.2f]", lower[i], upper[i]));
 			build.append(", ");
 		}
 
@@ -0,0 +1,232 @@
+package xcs.testbed;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import xcs.Classifier;
+import xcs.PopulationIndex;
+
+/**
+ * A PopulationIndex for RangeConditions made of quantized bitmap bins. The domain of
+ * each dimension is cut into equal bins, with the first and last bin also covering
+ * everything below and above it. Every indexed classifier has a slot, and each bin
+ * holds a bitmap of the slots whose interval overlaps it.
+ *
+ * A match ANDs together the bitmaps of the bins the state falls in, one per dimension.
+ * Only the classifiers left are tested against the state, so the cost is about
+ * dimensions * population / 64 word operations, plus the tests of near misses.
+ *
+ * @param <A> The type of actions of the classifiers
+ */
+public class RangeConditionIndex<A> implements PopulationIndex<RealState, RangeCondition, A> {
+
+	private final int dimensions;
+	private final int bins;
+	private final double min;
+	private final double binWidth;
+
+	/* Bitmaps of the slots overlapping each bin, indexed by dimension * bins + bin */
+	private long[][] bitmaps;
+
+	/* The classifier in each slot, or null if the slot is free */
+	private Classifier<A, RangeCondition>[] slots;
+
+	/* The slot of each indexed classifier */
+	private final Map<Classifier<A, RangeCondition>, Integer> slotOf = new IdentityHashMap<Classifier<A, RangeCondition>, Integer>();
+
+	/* Free slots below the highest one in use, used as a stack */
+	private int[] freeSlots = new int[16];
+	private int freeCount = 0;
+
+	/* One more than the highest slot ever used */
+	private int slotCount = 0;
+
+	/**
+	 * Creates an index over conditions with the given number of dimensions, in the domain [0, 1]
+	 * @param dimensions The number of dimensions of the conditions (stateDim)
+	 * @param bins The number of bins in each dimension
+	 */
+	public RangeConditionIndex(int dimensions, int bins){
+		this(dimensions, bins, 0, 1);
+	}
+
+	/**
+	 * @param dimensions The number of dimensions of the conditions (stateDim)
+	 * @param bins The number of bins in each dimension
+	 * @param min The lowest value expected in states
+	 * @param max The highest value expected in states
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public RangeConditionIndex(int dimensions, int bins, double min, double max){
+		if(dimensions < 1 || bins < 1)throw new IllegalArgumentException("Index must have at least one dimension and one bin");
+		if(!(max > min))throw new IllegalArgumentException("Domain must not be empty");
+		this.dimensions = dimensions;
+		this.bins = bins;
+		this.min = min;
+		binWidth = (max - min) / bins;
+
+		bitmaps = new long[dimensions * bins][1];
+		slots = new Classifier[64];
+	}
+
+	/**
+	 * @return The bin holding the given value
+	 */
+	private int binOf(double value){
+		int bin = (int)Math.floor((value - min) / binWidth);
+		if(bin < 0)return 0;
+		if(bin >= bins)return bins - 1;
+		return bin;
+	}
+
+	@Override
+	public void add(Classifier<A, RangeCondition> classifier){
+		if(slotOf.containsKey(classifier))return;
+
+		int slot;
+		if(freeCount > 0){
+			slot = freeSlots[-- freeCount];
+		}
+		else{
+			slot = slotCount ++;
+			ensureCapacity(slotCount);
+		}
+
+		slots[slot] = classifier;
+		slotOf.put(classifier, slot);
+		setBits(classifier.getCondition(), slot);
+	}
+
+	@Override
+	public void remove(Classifier<A, RangeCondition> classifier){
+		Integer slot = slotOf.remove(classifier);
+		if(slot == null)return;
+
+		clearBits(slot);
+		slots[slot] = null;
+		if(freeCount == freeSlots.length)freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+		freeSlots[freeCount ++] = slot;
+	}
+
+	@Override
+	public void update(Classifier<A, RangeCondition> classifier){
+		Integer slot = slotOf.get(classifier);
+		if(slot == null)return;
+
+		clearBits(slot);
+		setBits(classifier.getCondition(), slot);
+	}
+
+	@Override
+	public void clear(){
+		for(long[] bitmap : bitmaps){
+			Arrays.fill(bitmap, 0);
+		}
+		Arrays.fill(slots, null);
+		slotOf.clear();
+		freeCount = 0;
+		slotCount = 0;
+	}
+
+	@Override
+	public Set<Classifier<A, RangeCondition>> match(RealState state){
+		double[] values = state.getValues();
+		int words = (slotCount + 63) >>> 6;
+		long[] candidates = Arrays.copyOf(bitmaps[binOf(values[0])], words);
+		for(int d = 1;d < dimensions;d ++){
+			long[] bitmap = bitmaps[d * bins + binOf(values[d])];
+			for(int w = 0;w < words;w ++){
+				candidates[w] &= bitmap[w];
+			}
+		}
+
+		Set<Classifier<A, RangeCondition>> matches = new HashSet<Classifier<A, RangeCondition>>();
+		for(int w = 0;w < words;w ++){
+			long word = candidates[w];
+			while(word != 0){
+				int slot = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+
+				Classifier<A, RangeCondition> classifier = slots[slot];
+				if(classifier.getCondition().matchesState(state)){
+					matches.add(classifier);
+				}
+			}
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Finds a classifier with an equal condition by testing every indexed classifier,
+	 * as conditions that are equal need not share any bins
+	 */
+	@Override
+	public Classifier<A, RangeCondition> find(RangeCondition condition, A action){
+		for(int slot = 0;slot < slotCount;slot ++){
+			Classifier<A, RangeCondition> classifier = slots[slot];
+			if(classifier != null && classifier.getCondition().equals(condition) && classifier.getAction().equals(action)){
+				return classifier;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The number of classifiers in the index
+	 */
+	public int size(){
+		return slotOf.size();
+	}
+
+	/**
+	 * Sets the bit of the given slot in every bin overlapped by the given condition
+	 */
+	private void setBits(RangeCondition condition, int slot){
+		if(condition.getLength() != dimensions){
+			throw new IllegalArgumentException(String.format("Condition has %d dimensions, index has %d", condition.getLength(), dimensions));
+		}
+
+		int word = slot >>> 6;
+		long bit = 1L << slot;
+		for(int d = 0;d < dimensions;d ++){
+			double lower = condition.getLower(d);
+			double upper = condition.getUpper(d);
+			//Conditions never match when empty, so they need not be in any bin
+			if(!(upper > lower))continue;
+
+			int last = binOf(upper);
+			for(int b = binOf(lower);b <= last;b ++){
+				bitmaps[d * bins + b][word] |= bit;
+			}
+		}
+	}
+
+	private void clearBits(int slot){
+		int word = slot >>> 6;
+		long mask = ~(1L << slot);
+		for(long[] bitmap : bitmaps){
+			bitmap[word] &= mask;
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void ensureCapacity(int capacity){
+		if(capacity > slots.length){
+			Classifier<A, RangeCondition>[] grown = new Classifier[Math.max(capacity, slots.length * 2)];
+			System.arraycopy(slots, 0, grown, 0, slots.length);
+			slots = grown;
+		}
+
+		int words = (capacity + 63) >>> 6;
+		if(words > bitmaps[0].length){
+			int grownWords = Math.max(words, bitmaps[0].length * 2);
+			for(int i = 0;i < bitmaps.length;i ++){
+				bitmaps[i] = Arrays.copyOf(bitmaps[i], grownWords);
+			}
+		}
+	}
+}
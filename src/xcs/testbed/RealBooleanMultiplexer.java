@@ -1,11 +1,22 @@
 package xcs.testbed;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import xcs.Environment;
 import xcs.XCS;
+import xcs.XCSConstants;
 import xcs.XCSConstants.UpdateMethod;
 import xcs.XCSConstantsBuilder;
+import xcs.stats.ChartRenderer;
+import xcs.stats.RunArchiveWriter;
 import xcs.stats.StatsLogger;
 
 public class RealBooleanMultiplexer implements Environment<RealState, Integer>{
@@ -22,7 +33,10 @@ public class RealBooleanMultiplexer implements Environment<RealState, Integer>{
 	private static final int learningProblems = 20000;
 	private static final int evaluationProblems = 10000;
 
-	private RealStateBuilder stateBuilder;
+	/* The number of bins per dimension of the index used to find match sets */
+	private static final int indexBins = 16;
+
+	private final RealStateBuilder stateBuilder;
 
 	public RealBooleanMultiplexer(){
 		stateBuilder = new RealStateBuilder(numBits);
@@ -59,69 +73,113 @@ public class RealBooleanMultiplexer implements Environment<RealState, Integer>{
 		return false;
 	}
 
-	public static void main(String[] args){
-		StatsLogger crossTrialStats = new StatsLogger();
-		System.out.println(Math.log(Double.MAX_VALUE));
-		Integer[] actions = {0, 1};
-		RealBooleanMultiplexer problem = new RealBooleanMultiplexer();
-		XCSConstantsBuilder build = new XCSConstantsBuilder();
-		build.setStateDim(numBits);
-		build.setRho0(1);
-		build.setE0(0.001);
-		build.setBeta(0.2);
-		build.setThetaGA(25);
-		build.setChi(0.8);
-		build.setMu(0.04);
-		build.setSP(300);
-		build.setThetaNma(2);
-		build.setPhi(0);
-		build.setGamma(0);
-		build.setUpdateMethod(UpdateMethod.NXCS);
-
-		double sum = 0;
-
-		UpdateMethod[] algos = new UpdateMethod[]{UpdateMethod.NORMAL, UpdateMethod.XCSMU, UpdateMethod.RXCS, UpdateMethod.NXCS};
-
-		for(UpdateMethod type : algos){
-			StatsLogger logger = new StatsLogger();
-			build.setUpdateMethod(type);
-			System.out.println("Type: " + type);
-			for(int i = 0;i < trials;i ++){
-				XCS<RealState, RangeCondition, Integer> xcs = new XCS<RealState, RangeCondition, Integer>(build.build(), actions);
-				xcs.runXCSSingleStep(problem, learningProblems, 100);
-				logger.logRun(xcs.getStats());
-
-				problem.stateBuilder.reset();
-				//xcs.printPopulation(-1);
-
-				double result = xcs.runXCSEvaluationSingleStep(problem, evaluationProblems);
-				sum += result;
-
-				System.out.printf("Run %d: %3.2f/%3.2f%n", i + 1, result, evaluationProblems * build.getRho0());
-			}
+	public static void main(String[] args) throws IOException{
+		RunArchiveWriter archive = new RunArchiveWriter(new File("log/archive/RealBooleanMultiplexer.xcsa"), true);
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 
-			crossTrialStats.logTrial(logger.getStatsList());
+		try{
+			StatsLogger crossTrialStats = new StatsLogger();
+			System.out.println(Math.log(Double.MAX_VALUE));
+			final Integer[] actions = {0, 1};
+			final RealBooleanMultiplexer problem = new RealBooleanMultiplexer();
+			XCSConstantsBuilder build = new XCSConstantsBuilder();
+			build.setStateDim(numBits);
+			build.setRho0(1);
+			build.setE0(0.001);
+			build.setBeta(0.2);
+			build.setThetaGA(25);
+			build.setChi(0.8);
+			build.setMu(0.04);
+			build.setSP(300);
+			build.setThetaNma(2);
+			build.setPhi(0);
+			build.setGamma(0);
+			build.setUpdateMethod(UpdateMethod.NXCS);
+
+			double sum = 0;
+
+			UpdateMethod[] algos = new UpdateMethod[]{UpdateMethod.NORMAL, UpdateMethod.XCSMU, UpdateMethod.RXCS, UpdateMethod.NXCS};
+
+			for(UpdateMethod type : algos){
+				StatsLogger logger = new StatsLogger(false);
+				build.setUpdateMethod(type);
+				System.out.println("Type: " + type);
+				//The trials share the problem, whose state builder is safe to use from every thread at once
+				final XCSConstants cons = build.build();
+				List<Future<XCS<RealState, RangeCondition, Integer>>> runs = new ArrayList<Future<XCS<RealState, RangeCondition, Integer>>>(trials);
+				for(int i = 0;i < trials;i ++){
+					runs.add(executor.submit(new Callable<XCS<RealState, RangeCondition, Integer>>(){
+						@Override
+						public XCS<RealState, RangeCondition, Integer> call(){
+							XCS<RealState, RangeCondition, Integer> xcs = new XCS<RealState, RangeCondition, Integer>(cons, actions);
+							xcs.setPopulationIndex(new RangeConditionIndex<Integer>(numBits, indexBins));
+							xcs.runXCSSingleStep(problem, learningProblems, 100);
+							return xcs;
+						}
+					}));
+				}
+
+				for(int i = 0;i < trials;i ++){
+					XCS<RealState, RangeCondition, Integer> xcs = getRun(runs.get(i));
+					logger.logRun(xcs.getStats());
+					archive.writeRun(type.toString(), "RealBooleanMultiplexer", i, xcs.getStats());
+
+					//xcs.printPopulation(-1);
+
+					double result = xcs.runXCSEvaluationSingleStep(problem, evaluationProblems);
+					sum += result;
+
+					System.out.printf("Run %d: %3.2f/%3.2f%n", i + 1, result, evaluationProblems * build.getRho0());
+				}
+
+				crossTrialStats.logTrial(logger);
+
+				try{
+					logger.writeCSVFiles("log/csv/" + build.getUpdateMethod() + "/RealBooleanMultiplexer/<TRIAL_NUM>.csv", "Correct");
+					logger.writeChartsAsSinglePlot("log/charts/" + build.getUpdateMethod() + "/RealBooleanMultiplexer/<CHART_TITLE>.png", ""+ build.getUpdateMethod() + " " + numBits + " bit Real Boolean Multiplexer", "Correct");
+				}
+				catch(IOException e){
+					e.printStackTrace();
+				}
+
+				System.out.printf("Average Reward: %3.2f/%3.2f%n", sum / trials, evaluationProblems * build.getRho0());
+			}
 
+			String[] names = new String[UpdateMethod.values().length];
+			for(int i = 0;i < names.length;i ++){
+				names[i] = UpdateMethod.values()[i].toString();
+			}
 			try{
-				logger.writeLogAndCSVFiles("log/csv/" + build.getUpdateMethod() + "/RealBooleanMultiplexer/<TRIAL_NUM>.csv", "log/datadump/" + build.getUpdateMethod() + "/RealBooleanMultiplexer/<TIMESTEP_NUM>.log", "Correct");
-				logger.writeChartsAsSinglePlot("log/charts/" + build.getUpdateMethod() + "/RealBooleanMultiplexer/<CHART_TITLE>.png", ""+ build.getUpdateMethod() + " " + numBits + " bit Real Boolean Multiplexer", "Correct");
+				crossTrialStats.writeChartsAsMultiPlot("log/charts/RealBooleanMultiplexer/<CHART_TITLE>.png", numBits + " bit Real Boolean Multiplexer", names, "Correct");
 			}
 			catch(IOException e){
 				e.printStackTrace();
 			}
 
-			System.out.printf("Average Reward: %3.2f/%3.2f%n", sum / trials, evaluationProblems * build.getRho0());
+			ChartRenderer.getDefault().awaitCompletion();
 		}
-
-		String[] names = new String[UpdateMethod.values().length];
-		for(int i = 0;i < names.length;i ++){
-			names[i] = UpdateMethod.values()[i].toString();
+		finally{
+			//The pool's threads would otherwise keep the JVM alive after a failed trial
+			executor.shutdown();
+			archive.close();
 		}
+	}
+
+	/**
+	 * Waits for a trial to finish
+	 * @return The XCS that ran the trial
+	 */
+	private static <T> T getRun(Future<T> run){
 		try{
-			crossTrialStats.writeChartsAsMultiPlot("log/charts/RealBooleanMultiplexer/<CHART_TITLE>.png", numBits + " bit Real Boolean Multiplexer", names, "Correct");
+			return run.get();
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for a trial", e);
 		}
-		catch(IOException e){
-			e.printStackTrace();
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException)throw (RuntimeException)e.getCause();
+			throw new IllegalStateException("Trial failed", e.getCause());
 		}
 	}
 
@@ -0,0 +1,92 @@
+package xcs.testbed;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the lowest and highest value seen in each dimension of a
+ * real-valued environment. The version grows each time a RealStateBuilder publishes
+ * extremes: wider ones as states are seen, or [0, 1] again when it is reset. Between
+ * resets, snapshots taken later never have narrower bounds.
+ */
+public final class RealExtremes {
+	private final double[] min;
+	private final double[] max;
+	private final long version;
+
+	/**
+	 * @param min The lowest value of each dimension, which is copied
+	 * @param max The highest value of each dimension, which is copied
+	 * @param version The version of these extremes
+	 */
+	public RealExtremes(double[] min, double[] max, long version){
+		if(min.length != max.length)throw new IllegalArgumentException("Extremes must have the same length");
+		this.min = min.clone();
+		this.max = max.clone();
+		this.version = version;
+	}
+
+	/**
+	 * @return Extremes of [0, 1] in every dimension, at version 0
+	 */
+	public static RealExtremes unit(int dimensions){
+		double[] min = new double[dimensions];
+		double[] max = new double[dimensions];
+		Arrays.fill(max, 1);
+		return new RealExtremes(min, max, 0);
+	}
+
+	/**
+	 * @return Extremes copied from the given ranges, at version 0
+	 */
+	public static RealExtremes fromRanges(Range[] ranges){
+		double[] min = new double[ranges.length];
+		double[] max = new double[ranges.length];
+		for(int i = 0;i < ranges.length;i ++){
+			min[i] = ranges[i].getMin();
+			max[i] = ranges[i].getMax();
+		}
+		return new RealExtremes(min, max, 0);
+	}
+
+	public int getDimensions(){
+		return min.length;
+	}
+
+	public double getMin(int dimension){
+		return min[dimension];
+	}
+
+	public double getMax(int dimension){
+		return max[dimension];
+	}
+
+	/**
+	 * @return Half the width of the given dimension
+	 */
+	public double getStretch(int dimension){
+		return (max[dimension] - min[dimension]) / 2;
+	}
+
+	public long getVersion(){
+		return version;
+	}
+
+	/**
+	 * @return Whether every value of the given state lies within these extremes
+	 */
+	boolean contains(double[] values){
+		for(int i = 0;i < values.length;i ++){
+			if(values[i] < min[i] || values[i] > max[i])return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder build = new StringBuilder("v").append(version).append(' ');
+		for(int i = 0;i < min.length;i ++){
+			build.append(String.format("[%3.2f -> %3.2f]", min[i], max[i]));
+		}
+		return build.toString();
+	}
+}
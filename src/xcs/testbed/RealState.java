@@ -5,21 +5,33 @@ import xcs.State;
 public class RealState implements State<RangeCondition>{
 
 	private double[] state;
-	private Range[] extremes;
+	private RealExtremes extremes;
 
 	public RealState(double[] state){
 		this.state = state;
-		extremes = new Range[state.length];
-		for(int i = 0;i < extremes.length;i ++){
-			extremes[i] = new Range(0.5, 0.5);
-		}
+		extremes = RealExtremes.unit(state.length);
 	}
 
 	public RealState(double[] state, Range[] extremes){
+		this(state, RealExtremes.fromRanges(extremes));
+	}
+
+	/**
+	 * @param state The values of the state
+	 * @param extremes The extremes of the values seen when this state was made, used for the bounds of wildcards
+	 */
+	public RealState(double[] state, RealExtremes extremes){
 		this.state = state;
 		this.extremes = extremes;
 	}
 
+	/**
+	 * @return The extremes used by this state for the bounds of wildcards
+	 */
+	public RealExtremes getExtremes(){
+		return extremes;
+	}
+
 	/**
 	 * @param i The bit to get
 	 * @return The double value at the ith position in this state
@@ -29,18 +41,33 @@ public class RealState implements State<RangeCondition>{
 		return state[i];
 	}
 
+	/**
+	 * @return The values of this state, without a copy. Must not be modified
+	 */
+	double[] getValues(){
+		return state;
+	}
+
 	/**
 	 * Creates a new RangeCondition based on this state, of the given length
 	 */
 	@Override
 	public RangeCondition makeCondition(int length, double specificityProbability) {
-		Range[] ranges = new Range[length];
+		double[] lower = new double[length];
+		double[] upper = new double[length];
 		for(int i = 0;i < length;i ++){
-			if(Math.random() < specificityProbability)ranges[i] = new Range(state[i], Math.random() * 0.75 * extremes[i].getStretch());
-			else ranges[i] = extremes[i];
+			if(Math.random() < specificityProbability){
+				double stretch = Math.random() * 0.75 * extremes.getStretch(i);
+				lower[i] = state[i] - stretch;
+				upper[i] = state[i] + stretch;
+			}
+			else{
+				lower[i] = extremes.getMin(i);
+				upper[i] = extremes.getMax(i);
+			}
 		}
 
-		return new RangeCondition(ranges);
+		return new RangeCondition(lower, upper);
 	}
 
 }
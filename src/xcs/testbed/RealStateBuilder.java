@@ -1,37 +1,105 @@
 package xcs.testbed;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Creates RealStates while tracking the extremes of every value seen, starting from [0, 1].
+ * Safe to share between threads: the extremes are kept in lock-free per-dimension min/max
+ * accumulators, and each state holds an immutable snapshot of them that is never changed
+ * by later states.
+ */
 public class RealStateBuilder {
 
-	private Range[] extremes;
+	/* The extremes seen so far, as the raw bits of doubles so that they can be updated by CAS */
+	private final AtomicLongArray mins;
+	private final AtomicLongArray maxs;
+
+	/* The latest published extremes */
+	private final AtomicReference<RealExtremes> extremes;
 
 	public RealStateBuilder(int numBits){
-		extremes = new Range[numBits];
-		for(int i = 0;i < extremes.length;i ++){
-			extremes[i] = Range.fromMinMax(0, 1);
-		}
+		mins = new AtomicLongArray(numBits);
+		maxs = new AtomicLongArray(numBits);
+		extremes = new AtomicReference<RealExtremes>();
+		reset();
 	}
 
-	private void updateExtremes(double[] bits){
+	/**
+	 * Widens the accumulators of each dimension to include the given values
+	 * @return Whether any accumulator changed
+	 */
+	private boolean updateExtremes(double[] bits){
+		boolean changed = false;
 		for(int i = 0;i < bits.length;i ++){
-			if(extremes[i] == null)Range.fromMinMax(0, 1);
-			else{
-				double min = Math.min(bits[i], extremes[i].getMin());
-				double max = Math.max(bits[i], extremes[i].getMax());
-				extremes[i].setCenter((min + max) / 2);
-				extremes[i].setStretch((max - min) / 2);
+			double value = bits[i];
+			long current;
+			while(value < Double.longBitsToDouble(current = mins.get(i))){
+				if(mins.compareAndSet(i, current, Double.doubleToLongBits(value))){
+					changed = true;
+					break;
+				}
+			}
+			while(value > Double.longBitsToDouble(current = maxs.get(i))){
+				if(maxs.compareAndSet(i, current, Double.doubleToLongBits(value))){
+					changed = true;
+					break;
+				}
 			}
 		}
+		return changed;
+	}
+
+	/**
+	 * Publishes a snapshot of the accumulators that covers the given values, unless the current one already does
+	 * @return The published snapshot
+	 */
+	private RealExtremes publish(double[] values){
+		while(true){
+			RealExtremes current = extremes.get();
+			if(current.contains(values))return current;
+
+			double[] min = new double[mins.length()];
+			double[] max = new double[maxs.length()];
+			for(int i = 0;i < min.length;i ++){
+				min[i] = Double.longBitsToDouble(mins.get(i));
+				max[i] = Double.longBitsToDouble(maxs.get(i));
+			}
+			RealExtremes next = new RealExtremes(min, max, current.getVersion() + 1);
+			if(extremes.compareAndSet(current, next))return next;
+		}
 	}
 
 	public RealState makeState(double[] values){
-		updateExtremes(values);
-		return new RealState(values, extremes);
+		RealExtremes snapshot = extremes.get();
+		if(updateExtremes(values) || !snapshot.contains(values)){
+			snapshot = publish(values);
+		}
+		return new RealState(values, snapshot);
 	}
 
+	/**
+	 * @return The latest published extremes
+	 */
+	public RealExtremes getExtremes(){
+		return extremes.get();
+	}
+
+	/**
+	 * Resets the extremes to [0, 1] in every dimension. States made concurrently with a reset
+	 * may keep extremes from before it.
+	 */
 	public void reset(){
-		extremes = new Range[extremes.length];
-		for(int i = 0;i < extremes.length;i ++){
-			extremes[i] = Range.fromMinMax(0, 1);
+		for(int i = 0;i < mins.length();i ++){
+			mins.set(i, Double.doubleToLongBits(0));
+			maxs.set(i, Double.doubleToLongBits(1));
 		}
+
+		double[] min = new double[mins.length()];
+		double[] max = new double[maxs.length()];
+		Arrays.fill(max, 1);
+		RealExtremes current = extremes.get();
+		extremes.set(new RealExtremes(min, max, current == null ? 0 : current.getVersion() + 1));
 	}
 }
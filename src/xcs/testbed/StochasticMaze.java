@@ -1,20 +1,19 @@
 package xcs.testbed;
 
-import java.awt.Point;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 import xcs.Environment;
+import xcs.PolicyEvaluator;
+import xcs.StochasticPolicy;
 import xcs.XCS;
 import xcs.XCSConstants.UpdateMethod;
 import xcs.XCSConstantsBuilder;
+import xcs.stats.ChartRenderer;
+import xcs.stats.RunArchiveWriter;
 import xcs.stats.StatsLogger;
 
-public class StochasticMaze implements Environment<StringState, StochasticMaze.Action>{
+public class StochasticMaze implements Environment<StringState, StochasticMaze.Action>, PolicyEvaluator<StringState, StochasticMaze.Action>{
 	public static enum Action{
 		NORTH_WEST,
 		NORTH,
@@ -70,61 +69,35 @@ public class StochasticMaze implements Environment<StringState, StochasticMaze.A
 		}
 	}
 
-	private String[][] maze;
-	private List<Point> openPoints;
-	private List<Point> finalPoints;
+	private final MazeGrid maze;
+
+	/* The number of steps after which the agent is moved to a new position */
+	private static final int MAX_STEPS = 50;
+
+	/* The probability of a move slipping to one side */
+	private static final double SLIP_PROBABILITY = 0.4;
+
+	/* The index into MazeGrid.MOVE_X and MOVE_Y of each action */
+	private static final int[] MOVES = {0, 1, 2, 7, 3, 6, 5, 4};
+
 	private int lastX, lastY;
 	private int x, y;
 
 	private static final int trials = 10;
 	private static final int captureInterval = 50;
 
-	private static final String O_ENCODING = "00";
-	private static final String T_ENCODING = "01";
-	private static final String OOB_ENCODING = "10";
-	private static final String F_ENCODING = "11";
-
 	private int count;
 
 	public StochasticMaze(String file){
-		openPoints = new ArrayList<Point>();
-		finalPoints = new ArrayList<Point>();
-		try{
-			BufferedReader input = new BufferedReader(new FileReader(new File(file)));
-			try{
-				maze = new String[Integer.parseInt(input.readLine())][];
-				for(int y = 0;y < maze.length;y ++){
-					String line = input.readLine();
-					maze[y] = new String[line.length()];
-					for(int x = 0;x < line.length();x ++){
-
-						//Encode each character
-						switch(line.charAt(x)){
-						case 'O':
-							maze[y][x] = O_ENCODING;
-							openPoints.add(new Point(x, y));
-							break;
-						case 'T':
-							maze[y][x] = T_ENCODING;
-							break;
-						case 'F':
-							maze[y][x] = F_ENCODING;
-							finalPoints.add(new Point(x, y));
-							break;
-						default:
-							throw new IllegalArgumentException("Maze file contains invalid chars(" + line.charAt(x) + ")");
-						}
-					}
-				}
-			}
-			finally{
-				input.close();
-			}
-		}
-		catch(IOException e){
-			System.err.println("Error reader input file: ");
-			e.printStackTrace();
-		}
+		this(readGrid(file));
+	}
+
+	/**
+	 * Creates a maze environment on the given maze
+	 * @param maze The maze to run on
+	 */
+	public StochasticMaze(MazeGrid maze){
+		this.maze = maze;
 
 		lastX = -1;
 		lastY = -1;
@@ -132,23 +105,25 @@ public class StochasticMaze implements Environment<StringState, StochasticMaze.A
 		randomizePosition();
 	}
 
-	private void randomizePosition(){
-		Point random = openPoints.get((int)(Math.random() * openPoints.size()));
-		x = random.x;
-		y = random.y;
-	}
-
-	private String getEncoding(int x, int y){
-		if(x < 0 || y < 0 || x >= maze[0].length || y >= maze.length){
-			return OOB_ENCODING;
+	private static MazeGrid readGrid(String file){
+		try{
+			return MazeGrid.load(new File(file));
 		}
+		catch(IOException e){
+			System.err.println("Error reader input file: ");
+			e.printStackTrace();
+			throw new IllegalArgumentException("Could not read maze " + file, e);
+		}
+	}
 
-		return maze[y][x];
+	private void randomizePosition(){
+		int cell = maze.getOpenCell((int)(Math.random() * maze.getOpenCellCount()));
+		x = cell % maze.getWidth();
+		y = cell / maze.getWidth();
 	}
 
 	private boolean isValidPosition(int x, int y){
-		if(x < 0 || y < 0 || x >= maze[0].length || y >= maze.length)return false;
-		return !maze[y][x].equals(T_ENCODING);
+		return maze.isPassable(x, y);
 	}
 
 	@Override
@@ -156,16 +131,12 @@ public class StochasticMaze implements Environment<StringState, StochasticMaze.A
 		return getState(x, y);
 	}
 
+	/**
+	 * The perception of each cell is computed when the maze is loaded, and the
+	 * states are interned, so this does not allocate.
+	 */
 	private StringState getState(int x, int y){
-		StringBuilder state = new StringBuilder();
-		for(int yp = y - 1;yp <= y + 1;yp ++){
-			for(int xp = x - 1;xp <= x + 1;xp ++){
-				if(xp == x && yp == y)continue;
-				state.append(getEncoding(xp, yp));
-			}
-		}
-
-		return new StringState(state.toString());
+		return StringState.fromBits(maze.getPerception(x, y), MazeGrid.PERCEPTION_BITS);
 	}
 	/*
 	public double getReward(int x, int y){
@@ -177,8 +148,7 @@ public class StochasticMaze implements Environment<StringState, StochasticMaze.A
 
 	@Override
 	public double getReward(StringState state, Action action) {
-		final double E = 0.4;
-		if(Math.random() < E){
+		if(Math.random() < SLIP_PROBABILITY){
 			//Slip
 			if(Math.random() < .5)action = action.slipLeft();
 			else action = action.slipRight();
@@ -210,13 +180,13 @@ public class StochasticMaze implements Environment<StringState, StochasticMaze.A
 			x += moveX;
 			y += moveY;
 
-			if(maze[y][x].equals(F_ENCODING)){
+			if(maze.isFinal(x, y)){
 				count = 0;
 				return 1000;
 			}
 		}
 
-		if(count >= 50){
+		if(count >= MAX_STEPS){
 			randomizePosition();
 			count = 0;
 		}
@@ -228,121 +198,187 @@ public class StochasticMaze implements Environment<StringState, StochasticMaze.A
 	public boolean isFinalState(StringState state) {
 		int checkX = lastX;
 		int checkY = lastY;
-		if(state.equals(getState())){
+		//States are interned, so this is the same as comparing the perceptions
+		if(state == getState()){
 			checkX = x;
 			checkY = y;
 		}
 
-		for(Point p : finalPoints){
-			if(checkX == p.x && checkY == p.y)return true;
+		return maze.isFinal(checkX, checkY);
+	}
+
+	/**
+	 * Calculates the expected number of steps between goals when following the given policy, which
+	 * the sampled evaluation estimates. Episodes start on a random open cell, and the agent is moved
+	 * to a new one after MAX_STEPS steps without reaching a goal, still counting steps. The first
+	 * action of each episode is chosen in the goal just reached, as getReward moves the agent before
+	 * acting; see MazeGrid.getAverageSteps. Actions are weighted by their probability under the policy,
+	 * so random choices in unmatched states and sampled actions are included.
+	 * @return The expected number of steps per goal reached, or positive infinity if no goal can be reached
+	 */
+	@Override
+	public double evaluate(StochasticPolicy<StringState, Action> policy){
+		Action[] actions = Action.values();
+		double[] probabilities = new double[actions.length];
+		//Cells with the same perception have the same probabilities, so each is only found once
+		double[][] byPerception = new double[1 << MazeGrid.PERCEPTION_BITS][];
+		double[] moves = new double[maze.getOpenCellCount() * MazeGrid.MOVE_X.length];
+		for(int i = 0;i < maze.getOpenCellCount();i ++){
+			double[] chosen = getActionProbabilities(policy, maze.getOpenCell(i), byPerception, actions, probabilities);
+			for(int a = 0;a < actions.length;a ++){
+				moves[i * MazeGrid.MOVE_X.length + MOVES[a]] = chosen[a];
+			}
 		}
+		double[] finalMoves = new double[maze.getFinalCellCount() * MazeGrid.MOVE_X.length];
+		for(int i = 0;i < maze.getFinalCellCount();i ++){
+			double[] chosen = getActionProbabilities(policy, maze.getFinalCell(i), byPerception, actions, probabilities);
+			for(int a = 0;a < actions.length;a ++){
+				finalMoves[i * MazeGrid.MOVE_X.length + MOVES[a]] = chosen[a];
+			}
+		}
+		return maze.getAverageSteps(moves, finalMoves, SLIP_PROBABILITY, MAX_STEPS);
+	}
+
+	/**
+	 * @return The probability of the policy choosing each action in the given cell, found once for each perception
+	 */
+	private double[] getActionProbabilities(StochasticPolicy<StringState, Action> policy, int cell, double[][] byPerception, Action[] actions, double[] probabilities){
+		int x = cell % maze.getWidth();
+		int y = cell / maze.getWidth();
+		int perception = maze.getPerception(x, y);
+		if(byPerception[perception] == null){
+			policy.getActionProbabilities(getState(x, y), actions, probabilities);
+			byPerception[perception] = probabilities.clone();
+		}
+		return byPerception[perception];
+	}
 
-		return false;
+	/**
+	 * @return The fewest steps needed to reach a goal without slipping, averaged over every starting position
+	 * 			that can reach one. A lower bound on what evaluate can give, as slips and choosing the first move of
+	 * 			each episode at the goal only add steps
+	 */
+	public double getAverageOptimalSteps(){
+		return maze.getAverageOptimalSteps();
 	}
 
-	public static void main(String[] args){
-//		String[] mazeFiles = {"woods1.txt", "maze4.txt", "maze5.txt", "maze6.txt", "woods14.txt", "woods101.txt", "woods102.txt", "maze7.txt", "maze10.txt"};
-//		String[] mazeNames = {"Woods 1", "Maze 4", "Maze 5", "Maze 6", "Woods 14", "Woods 101", "Woods 102", "Maze 7", "Maze 10"};
+	public static void main(String[] args) throws IOException{
+		RunArchiveWriter archive = new RunArchiveWriter(new File("log/archive/Stochastic Maze.xcsa"), true);
+
+		try{
+	//		String[] mazeFiles = {"woods1.txt", "maze4.txt", "maze5.txt", "maze6.txt", "woods14.txt", "woods101.txt", "woods102.txt", "maze7.txt", "maze10.txt"};
+	//		String[] mazeNames = {"Woods 1", "Maze 4", "Maze 5", "Maze 6", "Woods 14", "Woods 101", "Woods 102", "Maze 7", "Maze 10"};
 		
-		String[] mazeFiles = {"woods1.txt", "maze4.txt"};
-		String[] mazeNames = {"Woods 1", "Maze 4"};
+			String[] mazeFiles = {"woods1.txt", "maze4.txt"};
+			String[] mazeNames = {"Woods 1", "Maze 4"};
 		
-//		int[] numberOfProblems = {5000, 7500, 5000, 10000, 20000, 8000, 8000, 8000, 10000};
-		int[] numberOfProblems = {5000};
-
-		XCSConstantsBuilder constants = new XCSConstantsBuilder();
-		constants.setSP(3000);
-		constants.setSpecificityProbability(0.9);
-		constants.setStateDim(16);
-		constants.setBeta(0.05);
-		constants.setGamma(0.7);
-		constants.setPexp(0.7);
-		constants.setChi(0.8);
-		constants.setMu(0.01);
-		constants.setThetaNma(8);
-		constants.setThetaGA(25);
-		constants.setE0(1);
-		constants.setThetaDel(20);
-		constants.setDoGASubsumption(false);
-		constants.setDoActionSetSubsumption(false);
-		//SMaze5
-		/*constants.setSP(3000);
-		constants.setSpecificityProbability(0.9);
-		constants.setStateDim(16);
-		constants.setBeta(0.05);
-		constants.setGamma(0.9);
-		constants.setPexp(1);
-		constants.setChi(0.8);
-		constants.setMu(0.01);
-		constants.setThetaNma(8);
-		constants.setThetaGA(25);
-		constants.setE0(5);
-		constants.setThetaDel(20);
-		constants.setDoGASubsumption(false);
-		constants.setDoActionSetSubsumption(false);*/
-		/*constants.setSP(2000);
-		constants.setSpecificityProbability(0.7);
-		constants.setStateDim(16);
-		constants.setBeta(0.1);
-		constants.setGamma(0.7);
-		constants.setPexp(1);
-		constants.setChi(0.8);
-		constants.setMu(0.01);
-		constants.setThetaNma(8);
-		constants.setThetaGA(25);
-		constants.setE0(5);
-		constants.setThetaDel(20);
-		constants.setDoGASubsumption(false);
-		constants.setDoActionSetSubsumption(false);*/
-
-		int[] problems = {0};
-
-		for(int file = 0;file < problems.length;file ++){
-			String mazeFile = mazeFiles[problems[file]];
-			String mazeName = mazeNames[problems[file]];
-			System.out.printf("Running on %s%n", mazeName);
-			StochasticMaze maze = new StochasticMaze("data/" + mazeFile);
-
-			StatsLogger crossTrialStats = new StatsLogger();
-
-			UpdateMethod[] algos = new UpdateMethod[]{UpdateMethod.NORMAL};
-
-			for(int z = 0;z < algos.length;z ++){
-				UpdateMethod type = algos[z];
-				String updateMethodName = type.toString();
-				StatsLogger logger = new StatsLogger();
-				constants.setUpdateMethod(type);
-				System.out.println("Type: " + type);
-
-				for(int i = 0;i < trials;i ++){
-					XCS<StringState, StringCondition, Action> xcs = new XCS<StringState, StringCondition, Action>(constants.build(), Action.values());
-					xcs.runXCSMultistep(maze, numberOfProblems[problems[file]], StochasticMaze.captureInterval);
-					logger.logRun(xcs.getStats());
-
-					System.out.printf("Run %d completed%n", i + 1);
+	//		int[] numberOfProblems = {5000, 7500, 5000, 10000, 20000, 8000, 8000, 8000, 10000};
+			int[] numberOfProblems = {5000};
+
+			XCSConstantsBuilder constants = new XCSConstantsBuilder();
+			constants.setSP(3000);
+			constants.setSpecificityProbability(0.9);
+			constants.setStateDim(16);
+			constants.setBeta(0.05);
+			constants.setGamma(0.7);
+			constants.setPexp(0.7);
+			constants.setChi(0.8);
+			constants.setMu(0.01);
+			constants.setThetaNma(8);
+			constants.setThetaGA(25);
+			constants.setE0(1);
+			constants.setThetaDel(20);
+			constants.setDoGASubsumption(false);
+			constants.setDoActionSetSubsumption(false);
+			constants.setUseExactEvaluation(true);
+			//SMaze5
+			/*constants.setSP(3000);
+			constants.setSpecificityProbability(0.9);
+			constants.setStateDim(16);
+			constants.setBeta(0.05);
+			constants.setGamma(0.9);
+			constants.setPexp(1);
+			constants.setChi(0.8);
+			constants.setMu(0.01);
+			constants.setThetaNma(8);
+			constants.setThetaGA(25);
+			constants.setE0(5);
+			constants.setThetaDel(20);
+			constants.setDoGASubsumption(false);
+			constants.setDoActionSetSubsumption(false);*/
+			/*constants.setSP(2000);
+			constants.setSpecificityProbability(0.7);
+			constants.setStateDim(16);
+			constants.setBeta(0.1);
+			constants.setGamma(0.7);
+			constants.setPexp(1);
+			constants.setChi(0.8);
+			constants.setMu(0.01);
+			constants.setThetaNma(8);
+			constants.setThetaGA(25);
+			constants.setE0(5);
+			constants.setThetaDel(20);
+			constants.setDoGASubsumption(false);
+			constants.setDoActionSetSubsumption(false);*/
+
+			int[] problems = {0};
+
+			for(int file = 0;file < problems.length;file ++){
+				String mazeFile = mazeFiles[problems[file]];
+				String mazeName = mazeNames[problems[file]];
+				System.out.printf("Running on %s%n", mazeName);
+				StochasticMaze maze = new StochasticMaze("data/" + mazeFile);
+				double optimalSteps = maze.getAverageOptimalSteps();
+				System.out.printf("Optimal average steps to goal: %3.2f%n", optimalSteps);
+
+				StatsLogger crossTrialStats = new StatsLogger();
+
+				UpdateMethod[] algos = new UpdateMethod[]{UpdateMethod.NORMAL};
+
+				for(int z = 0;z < algos.length;z ++){
+					UpdateMethod type = algos[z];
+					String updateMethodName = type.toString();
+					StatsLogger logger = new StatsLogger(false);
+					constants.setUpdateMethod(type);
+					System.out.println("Type: " + type);
+
+					for(int i = 0;i < trials;i ++){
+						XCS<StringState, StringCondition, Action> xcs = new XCS<StringState, StringCondition, Action>(constants.build(), Action.values());
+						xcs.runXCSMultistep(maze, numberOfProblems[problems[file]], StochasticMaze.captureInterval);
+						logger.logRun(xcs.getStats());
+						archive.writeRun(updateMethodName, mazeName, i, xcs.getStats());
+
+						double steps = maze.evaluate(xcs.toPolicy());
+						System.out.printf("Run %d completed: %3.2f steps to goal, %3.2f more than the optimum without slips (%3.2fx)%n", i + 1, steps, steps - optimalSteps, steps / optimalSteps);
+					}
+
+					crossTrialStats.logTrial(logger);
+					try{
+						logger.writeCSVFiles(String.format("log/csv/%s/Stochastic Maze/%s/Trial <TRIAL_NUM>.csv", updateMethodName, mazeName), "Average Number of Steps to Goal");
+						logger.writeChartsAsSinglePlot(String.format("log/charts/%s/Stochastic Maze/%s/<CHART_TITLE>.png", updateMethodName, mazeName), String.format("%s on %s", updateMethodName, mazeName), "Average Number of Steps to Goal");
+					}
+					catch(IOException e){
+						e.printStackTrace();
+					}
+				}
+
+				String[] names = new String[algos.length];
+				for(int i = 0;i < names.length;i ++){
+					names[i] = algos[i].toString();
 				}
 
-				crossTrialStats.logTrial(logger.getStatsList());
 				try{
-					logger.writeLogAndCSVFiles(String.format("log/csv/%s/Stochastic Maze/%s/Trial <TRIAL_NUM>.csv", updateMethodName, mazeName), String.format("log/datadump/%s/Stochastic Maze/<TIMESTEP_NUM>.log", updateMethodName), "Average Number of Steps to Goal");
-					logger.writeChartsAsSinglePlot(String.format("log/charts/%s/Stochastic Maze/%s/<CHART_TITLE>.png", updateMethodName, mazeName), String.format("%s on %s", updateMethodName, mazeName), "Average Number of Steps to Goal");
+					crossTrialStats.writeChartsAsMultiPlot(String.format("log/charts/Stochastic Maze/%s/<CHART_TITLE>.png", mazeName), mazeName, names, "Average Number of Steps to Goal");
 				}
 				catch(IOException e){
 					e.printStackTrace();
 				}
 			}
 
-			String[] names = new String[algos.length];
-			for(int i = 0;i < names.length;i ++){
-				names[i] = algos[i].toString();
-			}
-
-			try{
-				crossTrialStats.writeChartsAsMultiPlot(String.format("log/charts/Stochastic Maze/%s/<CHART_TITLE>.png", mazeName), mazeName, names, "Average Number of Steps to Goal");
-			}
-			catch(IOException e){
-				e.printStackTrace();
-			}
+			ChartRenderer.getDefault().awaitCompletion();
+		}
+		finally{
+			archive.close();
 		}
 	}
 }
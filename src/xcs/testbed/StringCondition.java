@@ -7,8 +7,15 @@ public class StringCondition implements Condition<StringState, StringCondition>
 	private String condition;
 	public static final char wildcard = '*';
 
+	/* The number of wildcards in the condition */
+	private int wildcards;
+
+	/* The condition packed as masks of its specific bits and their values, or null if it has chars other than 0, 1 and wildcards */
+	private long[] care;
+	private long[] value;
+
 	public StringCondition(String condition){
-		this.condition = condition;
+		setCondition(condition);
 	}
 
 	/**
@@ -24,6 +31,32 @@ public class StringCondition implements Condition<StringState, StringCondition>
 	 */
 	public void setCondition(String con){
 		this.condition = con;
+		pack();
+	}
+
+	/**
+	 * Counts the wildcards and packs the condition into masks, bit i of the masks being char i
+	 */
+	private void pack(){
+		int length = condition.length();
+		long[] care = new long[(length + 63) >>> 6];
+		long[] value = new long[care.length];
+		boolean binary = true;
+		wildcards = 0;
+		for(int i = 0;i < length;i ++){
+			char c = condition.charAt(i);
+			if(c == wildcard){
+				wildcards ++;
+			}
+			else{
+				care[i >>> 6] |= 1L << i;
+				if(c == '1')value[i >>> 6] |= 1L << i;
+				else if(c != '0')binary = false;
+			}
+		}
+
+		this.care = binary ? care : null;
+		this.value = binary ? value : null;
 	}
 
 	/**
@@ -49,7 +82,7 @@ public class StringCondition implements Condition<StringState, StringCondition>
 			}
 		}
 
-		condition = new String(conditionChars);
+		setCondition(new String(conditionChars));
 	}
 
 	/**
@@ -88,13 +121,7 @@ public class StringCondition implements Condition<StringState, StringCondition>
 	 */
 	@Override
 	public int wildcardCount() {
-		//numWildcards = length of condition - length of condition with all wildcards removed
-		int count = 0;
-		for(char c : condition.toCharArray()){
-			if(c == wildcard)++count;
-		}
-		
-		return count;
+		return wildcards;
 	}
 
 	/**
@@ -136,14 +163,19 @@ public class StringCondition implements Condition<StringState, StringCondition>
 	 */
 	@Override
 	public boolean isMoreGeneral(StringCondition specific) {
-		String coG = getCondition();
-		String coS = specific.getCondition();
+		if(wildcards <= specific.wildcards)return false;
 
-		int wildcardGeneralCount = wildcardCount();
-		int wildcardSpecificCount = specific.wildcardCount();
-
-		if(wildcardGeneralCount <= wildcardSpecificCount)return false;
+		if(care != null && specific.care != null && care.length == specific.care.length){
+			for(int w = 0;w < care.length;w ++){
+				//Every specific bit here must be specific, with the same value, in the other
+				if((care[w] & ~specific.care[w]) != 0)return false;
+				if(((value[w] ^ specific.value[w]) & care[w]) != 0)return false;
+			}
+			return true;
+		}
 
+		String coG = getCondition();
+		String coS = specific.getCondition();
 		for(int i = 0;i < coG.length();i ++){
 			if(!(coG.charAt(i) == wildcard || coG.charAt(i) == coS.charAt(i))){
 				return false;
@@ -4,6 +4,12 @@ import xcs.State;
 
 public class StringState implements State<StringCondition>{
 
+	/* The longest binary state that is interned by fromBits */
+	private static final int MAX_INTERNED_LENGTH = 16;
+
+	/* Interned binary states, indexed by length and then by value */
+	private static final StringState[][] binaryStates = new StringState[MAX_INTERNED_LENGTH + 1][];
+
 	private final String state;
 
 	public StringState(String state){
@@ -14,6 +20,46 @@ public class StringState implements State<StringCondition>{
 		return state;
 	}
 
+	/**
+	 * Returns the binary StringState with the given value, written most significant bit first.
+	 * States of up to 16 bits are interned, so after the first call for a value no allocation happens
+	 * and the same instance is always returned.
+	 * @param bits The value of the state
+	 * @param length The number of bits (chars) in the state
+	 * @return The StringState for the given value
+	 */
+	public static StringState fromBits(int bits, int length){
+		if(length > MAX_INTERNED_LENGTH)return new StringState(toBinary(bits, length));
+
+		StringState[] states = binaryStates[length];
+		if(states == null){
+			synchronized(binaryStates){
+				states = binaryStates[length];
+				if(states == null){
+					states = new StringState[1 << length];
+					binaryStates[length] = states;
+				}
+			}
+		}
+
+		int index = bits & ((1 << length) - 1);
+		StringState state = states[index];
+		if(state == null){
+			//Racing threads may both create the state, which is harmless as it is immutable
+			state = new StringState(toBinary(index, length));
+			states[index] = state;
+		}
+		return state;
+	}
+
+	private static String toBinary(int bits, int length){
+		char[] chars = new char[length];
+		for(int i = 0;i < length;i ++){
+			chars[i] = ((bits >>> (length - 1 - i)) & 1) == 0 ? '0' : '1';
+		}
+		return new String(chars);
+	}
+
 	/**
 	 * Generates a StringCondition from this StringState.
 	 * @param length The number of bits (chars) to be in the created Condition. Should be the length of this state (stateDim)
@@ -0,0 +1,50 @@
+package xcs.testbed;
+
+import xcs.StateCodec;
+
+/**
+ * Numbers binary StringStates of a fixed length by their value, read most significant bit first
+ * as in StringState.fromBits
+ */
+public class StringStateCodec implements StateCodec<StringState> {
+
+	private final int length;
+
+	/**
+	 * @param length The number of bits (chars) in the states. Should be stateDim
+	 */
+	public StringStateCodec(int length){
+		if(length < 0 || length > 62)throw new IllegalArgumentException("States must have between 0 and 62 bits");
+		this.length = length;
+	}
+
+	@Override
+	public long getStateCount(){
+		return 1L << length;
+	}
+
+	@Override
+	public long encode(StringState state){
+		String bits = state.getState();
+		if(bits.length() != length){
+			throw new IllegalArgumentException(String.format("State has %d bits, codec has %d", bits.length(), length));
+		}
+
+		long code = 0;
+		for(int i = 0;i < length;i ++){
+			code = (code << 1) | (bits.charAt(i) == '1' ? 1 : 0);
+		}
+		return code;
+	}
+
+	@Override
+	public StringState decode(long code){
+		if(length <= 31)return StringState.fromBits((int)code, length);
+
+		char[] chars = new char[length];
+		for(int i = 0;i < length;i ++){
+			chars[i] = ((code >>> (length - 1 - i)) & 1) == 0 ? '0' : '1';
+		}
+		return new StringState(new String(chars));
+	}
+}
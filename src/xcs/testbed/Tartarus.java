@@ -4,6 +4,9 @@ import java.io.*;
 import java.util.*;
 import xcs.*;
 import xcs.XCSConstants.UpdateMethod;
+import xcs.stats.ChartRenderer;
+import xcs.stats.RunArchiveWriter;
+import xcs.stats.RunningStatistic;
 import xcs.stats.StatsLogger;
 import xcs.testbed.Maze.Action;
 
@@ -17,101 +20,241 @@ public class Tartarus implements Environment<StringState, Tartarus.Action>{
 
 	private enum AgentOrientation {NORTH, EAST, SOUTH, WEST}
 
-	private String[][] world;
-	private String[][] temp;
+	/* The cell encodings. Each is the 2 bit value the agent senses for that cell */
+	private static final byte EMPTY = 0; //00
+	private static final byte BLOCK = 1; //01
+	private static final byte OOB = 2;   //10
+	private static final byte WALL = 3;  //11
 
-	private final String EMPTY = "00";
-	private final String BLOCK = "01";
-	private final String WALL = "11";
-	private final String OOB = "10";
+	/* The zone flags of each cell, used to keep the score and reward up to date as blocks move */
+	private static final byte EDGE = 1;
+	private static final byte CORNER = 2;
+	private static final byte SECOND_RING = 4;
+
+	/* The number of cells the agent senses around itself */
+	private static final int NUM_SENSORS = 8;
+
+	/* The (x, y) direction each orientation faces, indexed by ordinal */
+	private static final int[] FORWARD_X = {0, 1, 0, -1};
+	private static final int[] FORWARD_Y = {1, 0, -1, 0};
+
+	/* The board, including the surrounding walls, stored row by row. Cell (x, y) is at y * width + x */
+	private byte[] world;
+
+	/* The board as it was at the start of the episode. Never modified, and shared with forks */
+	private byte[] initialWorld;
+
+	/* The width of a row of the board, including both walls */
+	private int width;
+
+	/* Per orientation, the offsets into world of each sensed cell, starting in front of the agent and going clockwise */
+	private int[][] sensorOffsets;
+
+	/* Per orientation, the offset into world of the cell in front of the agent */
+	private int[] forwardOffsets;
+
+	/* The zone flags of each cell of world */
+	private byte[] zones;
+
+	/* The number of blocks on the edge, in the corners and on the second ring of the board */
+	private int edgeBlocks;
+	private int cornerBlocks;
+	private int secondRingBlocks;
+
+	/* The zone counts of initialWorld */
+	private int initialEdgeBlocks;
+	private int initialCornerBlocks;
+	private int initialSecondRingBlocks;
 
 	private int worldSize;
 	private int x, y;
 	private int numSteps;
+	private int initialSteps;
 	private AgentOrientation orientation;
 
+	private final Random random;
+
 	/**
 	 * Take in a file and number of steps to perform for the Tartarus Board
 	 * @param file
 	 * @param numSteps
 	 */
 	public Tartarus(String file, int numSteps){
+		this(readBoard(file), numSteps, System.nanoTime());
+	}
 
-		try{
-			BufferedReader input = new BufferedReader(new FileReader(new File(file)));
-			try{
-				worldSize = Integer.parseInt(input.readLine());
-
-				//Initialise the size of the Tartarus
-				world = new String[worldSize+2][worldSize+2];
-
-				//Surround the Tartarus world with walls
-				for (int i = 0; i < worldSize + 2; i++) world[i][0] = world[i][worldSize + 1] = WALL;
-				for (int j = 0; j < worldSize + 2; j++) world[0][j] = world[worldSize + 1][j] = WALL;
-
-				//Read the map from a file
-				for(int y=1; y<world.length-1; y++){
-					String line = input.readLine();
-					for(int x=0; x<line.length(); x++){
-
-						switch(line.charAt(x)){
-						case 'O':
-							world[x+1][y] = EMPTY;
-							break;
-						case 'B':
-							world[x+1][y] = BLOCK;
-							break;
-						case 'W':
-							world[x+1][y] = WALL;
-							break;
-						default:
-							throw new IllegalArgumentException("Map contains invalid characters (" + line.charAt(x) + ")");
-
-						}
-					}
+	/**
+	 * Creates a Tartarus on the given board
+	 * @param board The initial layout of the board
+	 * @param numSteps The number of movements the agent can make
+	 * @param seed The seed for placing the agent
+	 */
+	public Tartarus(TartarusBoard board, int numSteps, long seed){
+		random = new Random(seed);
+		worldSize = board.getSize();
+
+		//Initialise the size of the Tartarus, surrounded by walls
+		width = worldSize + 2;
+		world = new byte[width * width];
+		Arrays.fill(world, WALL);
+		//Row y of the board file is row y of the world, inside the walls
+		for(int y = 0;y < worldSize;y ++){
+			for(int x = 0;x < worldSize;x ++){
+				switch(board.getCell(x, y)){
+				case TartarusBoard.EMPTY: world[(y + 1) * width + x + 1] = EMPTY; break;
+				case TartarusBoard.BLOCK: world[(y + 1) * width + x + 1] = BLOCK; break;
+				case TartarusBoard.WALL: world[(y + 1) * width + x + 1] = WALL; break;
 				}
 			}
-			finally{
-				input.close();
-			}
+		}
+
+		initialWorld = world.clone();
+		buildOffsetTables();
+		buildZones();
+		initialEdgeBlocks = edgeBlocks;
+		initialCornerBlocks = cornerBlocks;
+		initialSecondRingBlocks = secondRingBlocks;
+
+		RandomisePosition();
+
+		//Set available number of movements that the agent can have
+		this.numSteps = numSteps;
+		this.initialSteps = numSteps;
+	}
+
+	/**
+	 * Creates a copy of the given Tartarus at the start of an episode,
+	 * sharing the initial board and lookup tables rather than rebuilding them
+	 */
+	private Tartarus(Tartarus other, long seed){
+		random = new Random(seed);
+		worldSize = other.worldSize;
+		width = other.width;
+		initialWorld = other.initialWorld;
+		world = initialWorld.clone();
+		sensorOffsets = other.sensorOffsets;
+		forwardOffsets = other.forwardOffsets;
+		zones = other.zones;
+		initialEdgeBlocks = other.initialEdgeBlocks;
+		initialCornerBlocks = other.initialCornerBlocks;
+		initialSecondRingBlocks = other.initialSecondRingBlocks;
+		initialSteps = other.initialSteps;
+		reset();
+	}
+
+	/**
+	 * Creates a new Tartarus on the same board as this one, at the start of an episode.
+	 * The fork has its own copy of the board, so the two can be used on different threads.
+	 * @param seed The seed for placing the agent in the fork
+	 * @return The new Tartarus
+	 */
+	public Tartarus fork(long seed){
+		return new Tartarus(this, seed);
+	}
+
+	/**
+	 * Restores the board to how it was at the start of the episode and places
+	 * the agent at a new random position, with all of its steps available
+	 */
+	public void reset(){
+		System.arraycopy(initialWorld, 0, world, 0, world.length);
+		edgeBlocks = initialEdgeBlocks;
+		cornerBlocks = initialCornerBlocks;
+		secondRingBlocks = initialSecondRingBlocks;
+		numSteps = initialSteps;
+		RandomisePosition();
+	}
+
+	/**
+	 * Resets this Tartarus, reseeding the placement of the agent
+	 * @param seed The seed for placing the agent
+	 */
+	public void reset(long seed){
+		random.setSeed(seed);
+		reset();
+	}
+
+	private static TartarusBoard readBoard(String file){
+		try{
+			return TartarusBoard.load(new File(file));
 		}
 		catch(IOException e){
 			System.err.println("Error reader input file: ");
 			e.printStackTrace();
+			throw new IllegalArgumentException("Could not read Tartarus board " + file, e);
 		}
+	}
 
-		temp = world;
-		//		Random rnd = new Random();
-		//
-		//		do {
-		//			y = 2 + rnd.nextInt(worldSize - 2);
-		//			x = 2 + rnd.nextInt(worldSize - 2);
-		//
-		//		} while (world[y][x] == BLOCK);
-		//
-		//		switch (rnd.nextInt(4)) {
-		//		case 0: orientation = AgentOrientation.NORTH; break;
-		//		case 1: orientation = AgentOrientation.EAST; break;
-		//		case 2: orientation = AgentOrientation.SOUTH; break;
-		//		case 3: orientation = AgentOrientation.WEST; break;
-		//		}
+	/**
+	 * Precomputes, for each orientation, where the sensed cells are relative to the agent
+	 */
+	private void buildOffsetTables(){
+		sensorOffsets = new int[FORWARD_X.length][NUM_SENSORS];
+		forwardOffsets = new int[FORWARD_X.length];
+		for(int o = 0;o < FORWARD_X.length;o ++){
+			int forward = FORWARD_Y[o] * width + FORWARD_X[o];
+			//Right is the forward direction turned clockwise
+			int right = -FORWARD_X[o] * width + FORWARD_Y[o];
+
+			forwardOffsets[o] = forward;
+			sensorOffsets[o][0] = forward;          //Upper Middle
+			sensorOffsets[o][1] = forward + right;  //Upper Right
+			sensorOffsets[o][2] = right;            //Right
+			sensorOffsets[o][3] = -forward + right; //Lower Right
+			sensorOffsets[o][4] = -forward;         //Lower Middle
+			sensorOffsets[o][5] = -forward - right; //Lower Left
+			sensorOffsets[o][6] = -right;           //Left
+			sensorOffsets[o][7] = forward - right;  //Upper Left
+		}
+	}
 
-		RandomisePosition();
+	/**
+	 * Flags the cells that contribute to the score and reward, and counts the blocks already on them
+	 */
+	private void buildZones(){
+		zones = new byte[world.length];
+		int last = width - 2;
+		for(int i = 1;i < width - 1;i ++){
+			zones[i * width + 1] |= EDGE;
+			zones[i * width + last] |= EDGE;
+			zones[width + i] |= EDGE;
+			zones[last * width + i] |= EDGE;
+		}
+		zones[width + 1] |= CORNER;
+		zones[width + last] |= CORNER;
+		zones[last * width + 1] |= CORNER;
+		zones[last * width + last] |= CORNER;
+		for(int i = 2;i < width - 1;i ++){
+			zones[i * width + 2] |= SECOND_RING;
+			zones[i * width + width - 3] |= SECOND_RING;
+			zones[2 * width + i] |= SECOND_RING;
+			zones[(width - 3) * width + i] |= SECOND_RING;
+		}
 
-		//Set available number of movements that the agent can have
-		this.numSteps = numSteps;
+		edgeBlocks = cornerBlocks = secondRingBlocks = 0;
+		for(int i = 0;i < world.length;i ++){
+			if(world[i] == BLOCK)countBlock(i, 1);
+		}
 	}
 
-	private void RandomisePosition(){
-		Random rnd = new Random();
+	/**
+	 * Adds (or with -1, removes) a block at the given cell to the zone counts
+	 */
+	private void countBlock(int cell, int delta){
+		byte zone = zones[cell];
+		if((zone & EDGE) != 0)edgeBlocks += delta;
+		if((zone & CORNER) != 0)cornerBlocks += delta;
+		if((zone & SECOND_RING) != 0)secondRingBlocks += delta;
+	}
 
+	private void RandomisePosition(){
 		do {
-			y = 2 + rnd.nextInt(worldSize - 2);
-			x = 2 + rnd.nextInt(worldSize - 2);
+			y = 2 + random.nextInt(worldSize - 2);
+			x = 2 + random.nextInt(worldSize - 2);
 
-		} while (world[y][x] == BLOCK);
+		} while (world[y * width + x] == BLOCK);
 
-		switch (rnd.nextInt(4)) {
+		switch (random.nextInt(4)) {
 		case 0: orientation = AgentOrientation.NORTH; break;
 		case 1: orientation = AgentOrientation.EAST; break;
 		case 2: orientation = AgentOrientation.SOUTH; break;
@@ -122,225 +265,116 @@ public class Tartarus implements Environment<StringState, Tartarus.Action>{
 
 
 	/**
-	 * Calculate the current Tartarus Board's score
+	 * Calculate the current Tartarus Board's score.
+	 * Each block on the edge scores one, and blocks in the corners score two.
 	 */
 	public int Score(){
-		int score = 0;
-
-		for (int r = 1; r < world.length - 1; ++r) {
-			if (world[r][1] == BLOCK) score++;
-			if (world[r][world[r].length - 2] == BLOCK) score++;
-		}
-
-		for (int c = 1; c < world[0].length - 1; ++c) {
-			if (world[1][c] == BLOCK) score++;
-			if (world[world.length - 2][c] == BLOCK) score++;
-		}
-
-		return score;
+		return edgeBlocks + cornerBlocks;
 	}
 
 	public boolean isValidPosition(int x, int y){
-		StringState s = SenseUpperMiddle();
-		if(s.getState() == WALL) return false;
-		if(s.getState() == BLOCK && SenseBeyond().getState() != EMPTY) return false;
+		int position = this.y * width + this.x;
+		int forward = forwardOffsets[orientation.ordinal()];
+		byte ahead = world[position + forward];
+		if(ahead == WALL) return false;
+		if(ahead == BLOCK && world[position + 2 * forward] != EMPTY) return false;
 
 		return true;
 	}
 
-	private StringState getState(int x, int y){
-		StringBuilder state = new StringBuilder();
-
-		for(int yp = y - 1;yp <= y + 1;yp ++){
-			for(int xp = x - 1;xp <= x + 1;xp ++){
-				if(xp == x && yp == y) continue;
-				state.append(getEncoding(xp, yp));
-			}
+	/**
+	 * Packs the cells sensed by the agent, starting in front of it and going clockwise,
+	 * into a 16 bit value
+	 * @return The packed sensor readings
+	 */
+	private int sense(){
+		int[] offsets = sensorOffsets[orientation.ordinal()];
+		int position = y * width + x;
+		int bits = 0;
+		for(int i = 0;i < NUM_SENSORS;i ++){
+			bits = (bits << 2) | world[position + offsets[i]];
 		}
-
-		return new StringState(state.toString());
+		return bits;
 	}
 
+	/**
+	 * Returns the cells sensed by the agent, relative to the direction it is facing.
+	 * The returned states are shared, so no allocation happens after the first call for a reading.
+	 */
 	@Override
 	public StringState getState() {
-		return getState(x, y);
-	}
-
-	private String getEncoding(int x, int y){
-		if(x < 0 || y < 0 || x >= world[0].length || y >= world.length){
-			return OOB;
-		}
-
-		return world[y][x];
+		return StringState.fromBits(sense(), 2 * NUM_SENSORS);
 	}
 
 	public StringState[] MoveForward(){
-		//		if(numSteps == 0) return Sensor();
-		//
-		//		numSteps--;
-
 		PerformMove();
 		return Sensor();
 	}
 
 	public void PerformMove(){
-		StringState s = SenseUpperMiddle();
+		int position = y * width + x;
+		int forward = forwardOffsets[orientation.ordinal()];
+		byte ahead = world[position + forward];
 
-		if(s.getState() == WALL) return;
-		if(s.getState() == BLOCK && SenseBeyond().getState() != EMPTY) return;
+		if(ahead == WALL) return;
+		if(ahead == BLOCK && world[position + 2 * forward] != EMPTY) return;
 
-		switch(orientation){
-		case NORTH: y++; break;
-		case EAST:  x++; break;
-		case SOUTH: y--; break;
-		case WEST:  x--; break;
-		}
-
-		if(s.getState() == BLOCK){
-			world[y][x] = EMPTY;
+		x += FORWARD_X[orientation.ordinal()];
+		y += FORWARD_Y[orientation.ordinal()];
 
-			switch(orientation){
-			case NORTH: world[y + 1][x] = BLOCK; break;
-			case EAST:  world[y][x + 1] = BLOCK; break;
-			case SOUTH: world[y - 1][x] = BLOCK; break;
-			case WEST:  world[y][x - 1] = BLOCK; break;
-			}
+		if(ahead == BLOCK){
+			world[position + forward] = EMPTY;
+			world[position + 2 * forward] = BLOCK;
+			countBlock(position + forward, -1);
+			countBlock(position + 2 * forward, 1);
 		}
 
 	}
 
 	public StringState[] TurnLeft(){
-		//		if(numSteps == 0) return Sensor();
+		turnLeft();
+		return Sensor();
+	}
 
-		//		numSteps--;
+	public StringState[] TurnRight(){
+		turnRight();
+		return Sensor();
+	}
 
+	private void turnLeft(){
 		switch(orientation){
 		case NORTH: orientation = AgentOrientation.WEST; break;
 		case EAST: orientation = AgentOrientation.NORTH; break;
 		case SOUTH: orientation = AgentOrientation.EAST; break;
 		case WEST: orientation = AgentOrientation.SOUTH; break;
 		}
-		return Sensor();
-
 	}
 
-	public StringState[] TurnRight(){
-		//		if(numSteps == 0) return Sensor();
-		//
-		//		numSteps--;
-
+	private void turnRight(){
 		switch(orientation){
 		case NORTH: orientation = AgentOrientation.EAST; break;
 		case EAST: orientation = AgentOrientation.SOUTH; break;
 		case SOUTH: orientation = AgentOrientation.WEST; break;
 		case WEST: orientation = AgentOrientation.NORTH; break;
 		}
-		return Sensor();
 	}
 
+	/**
+	 * @return Each sensed cell as a 2 bit StringState, starting in front of the agent and going clockwise
+	 */
 	public StringState[] Sensor(){
-		StringState[] state = new StringState[8];
-
-		state[0] = SenseUpperMiddle();
-		state[1] = SenseUpperRight();
-		state[2] = SenseRight();
-		state[3] = SenseLowerRight();
-		state[4] = SenseLowerMiddle();
-		state[5] = SenseLowerLeft();
-		state[6] = SenseLeft();
-		state[7] = SenseUpperLeft();
-
-		return state;
-	}
-
-	private StringState SenseUpperMiddle(){
-		switch (orientation) {
-		case NORTH: return new StringState(world[y + 1][x]);
-		case EAST:  return new StringState(world[y][x + 1]);
-		case SOUTH: return new StringState(world[y - 1][x]);
-		case WEST:  default: return new StringState(world[y][x - 1]);
-		}
-	}
-
-	private StringState SenseUpperLeft(){
-		switch (orientation) {
-		case NORTH: return new StringState(world[y + 1][x - 1]);
-		case EAST:  return new StringState(world[y + 1][x + 1]);
-		case SOUTH: return new StringState(world[y - 1][x + 1]);
-		case WEST:  default: return new StringState(world[y - 1][x - 1]);
-		}
-	}
-
-	private StringState SenseUpperRight(){
-		switch (orientation) {
-		case NORTH: return new StringState(world[y + 1][x + 1]);
-		case EAST:  return new StringState(world[y - 1][x + 1]);
-		case SOUTH: return new StringState(world[y - 1][x - 1]);
-		case WEST:  default: return new StringState(world[y + 1][x - 1]);
-		}
-	}
-
-	private StringState SenseLeft(){
-		switch (orientation) {
-		case NORTH: return new StringState(world[y][x - 1]);
-		case EAST:  return new StringState(world[y + 1][x]);
-		case SOUTH: return new StringState(world[y][x + 1]);
-		case WEST:  default: return new StringState(world[y - 1][x]);
+		StringState[] state = new StringState[NUM_SENSORS];
+		int bits = sense();
+		for(int i = 0;i < NUM_SENSORS;i ++){
+			state[i] = StringState.fromBits(bits >>> (2 * (NUM_SENSORS - 1 - i)), 2);
 		}
-	}
-
-	private StringState SenseRight(){
-		switch(orientation){
-		case NORTH: return new StringState(world[y][x + 1]);
-		case EAST:  return new StringState(world[y - 1][x]);
-		case SOUTH: return new StringState(world[y][x - 1]);
-		case WEST:  default: return new StringState(world[y + 1][x]);
-		}
-	}
-
-	private StringState SenseLowerLeft(){
-		switch(orientation){
-		case NORTH: return new StringState(world[y - 1][x - 1]);
-		case EAST:  return new StringState(world[y + 1][x - 1]);
-		case SOUTH: return new StringState(world[y + 1][x + 1]);
-		case WEST:  default: return new StringState(world[y - 1][x + 1]);
-		}
-	}
-
-	private StringState SenseLowerMiddle(){
-		switch(orientation){
-		case NORTH: return new StringState(world[y - 1][x]);
-		case EAST:  return new StringState(world[y][x - 1]);
-		case SOUTH: return new StringState(world[y + 1][x]);
-		case WEST:  default: return new StringState(world[y][x + 1]);
-		}
-	}
-
-	private StringState SenseLowerRight(){
-		switch(orientation){
-		case NORTH: return new StringState(world[y - 1][x + 1]);
-		case EAST:  return new StringState(world[y - 1][x - 1]);
-		case SOUTH: return new StringState(world[y + 1][x - 1]);
-		case WEST:  default: return new StringState(world[y + 1][x + 1]);
-		}
-	}
 
-	private StringState SenseBeyond(){
-		try {
-			switch (orientation) {
-			case NORTH: return new StringState(world[y + 2][x]);
-			case EAST:  return new StringState(world[y][x + 2]);
-			case SOUTH: return new StringState(world[y - 2][x]);
-			case WEST:  default: return new StringState(world[y][x - 2]);
-			}
-		} catch (ArrayIndexOutOfBoundsException e) {
-			return new StringState(WALL);
-		}
+		return state;
 	}
 
 	public void PrintWorld(PrintStream out){
-		for (int r = world.length - 1; r >= 0; --r) {
-			for (int c = 0; c < world[r].length; ++c) {
+		for (int r = width - 1; r >= 0; --r) {
+			for (int c = 0; c < width; ++c) {
 				if (r == y && c == x) {
 					switch (orientation) {
 					case NORTH: out.print("^"); break;
@@ -349,7 +383,7 @@ public class Tartarus implements Environment<StringState, Tartarus.Action>{
 					case WEST: out.print("<"); break;
 					}
 				} else {
-					switch (world[r][c]) {
+					switch (world[r * width + c]) {
 					case EMPTY: out.print("."); break;
 					case BLOCK: out.print("*"); break;
 					case WALL: out.print("#"); break;
@@ -362,61 +396,37 @@ public class Tartarus implements Environment<StringState, Tartarus.Action>{
 	}
 
 
+	/**
+	 * Performs the given action without counting it as a step or calculating a reward
+	 * @param action The action to perform
+	 */
+	public void performAction(Action action){
+		switch(action){
+		case TURNLEFT: turnLeft(); break;
+		case TURNRIGHT: turnRight(); break;
+		case FORWARD: PerformMove(); break;
+		}
+	}
+
 	@Override
 	public double getReward(StringState state, Action action) {
-		// TODO Auto-generated method stub
 		if(isFinalState(state)){
-			//			return Score();
 			RandomisePosition();
-			//			return 0;
 		}
 
-		if(action == Action.TURNLEFT ){
-			TurnLeft();
-			numSteps--;
-		}
-		else if (action == Action.TURNRIGHT){
-			TurnRight();
-			numSteps--;
-		}
-		else if(action == Action.FORWARD){
-			MoveForward();
-			numSteps--;
-		}
+		performAction(action);
+		numSteps--;
 
 
 		if(numSteps>=0) {
-			//			System.out.println(numSteps);
-
-			if(world[1][world.length-2] == BLOCK || world[1][1] == BLOCK
-					|| world[world.length-2][1] == BLOCK || world[world.length-2][world.length-2] == BLOCK){
-				return 2;
-			}
-			else {
-				for (int r = 2; r < world.length - 1; ++r) {
-					if (world[r][2] == BLOCK) return 1;
-					if (world[r][world[r].length - 3] == BLOCK) return 1;
-				}
-
-				for (int c = 2; c < world[0].length - 1; ++c) {
-					if (world[2][c] == BLOCK) return 1;
-					if (world[world.length - 3][c] == BLOCK) return 1;
-				}
-			}
+			if(cornerBlocks > 0) return 2;
+			if(secondRingBlocks > 0) return 1;
 		}
 		else{
 			PrintWorld(System.out);
 			System.out.println(Score());
 
-			RandomisePosition();
-			world = temp;
-			numSteps = 80;
-
-//			try {
-////				Thread.sleep(1000);
-//			} catch (InterruptedException e) {
-//				e.printStackTrace();
-//			}
+			reset();
 		}
 
 		return 0;
@@ -424,7 +434,6 @@ public class Tartarus implements Environment<StringState, Tartarus.Action>{
 
 	@Override
 	public boolean isFinalState(StringState state) {
-		// TODO Auto-generated method stub
 		int maxScore = 8 + (worldSize-4);
 		if(Score() == maxScore) return true;
 		else if(numSteps==0) return true;
@@ -436,87 +445,103 @@ public class Tartarus implements Environment<StringState, Tartarus.Action>{
 	public static int trials = 10;
 	public static int captureInterval = 5;
 
-	public static void main(String[] args){
-		//		Tartarus tartarus = new Tartarus(("data/" + "World01.txt"), 80);
-
-		String[] tartarusFiles = {"World01.txt"};
-		String[] tartarusNames = {"6x6"};
-		//		int[] numberOfProblems = {5000, 7500, 5000, 10000, 20000, 8000, 8000, 8000, 10000};
-		int[] numberOfProblems = {10};
-
-		//===============Algorithm====================
-		XCSConstantsBuilder constants = new XCSConstantsBuilder();
-		constants.setSP(500);
-		constants.setOmega(1 / 1000);
-		constants.setSpecificityProbability(0.4);
-		constants.setStateDim(16);
-		constants.setBeta(0.2);
-		constants.setGamma(0.7);
-		constants.setPexp(1);
-		constants.setChi(0.8);
-		constants.setMu(0.01);
-		constants.setThetaNma(8);
-		constants.setThetaGA(25);
-		constants.setE0(10);
-		constants.setThetaDel(20);
-		constants.setDoGASubsumption(false);
-		constants.setDoActionSetSubsumption(false);
-
-		int[] problems = {0};
+	/* The boards each trained population is scored on */
+	public static int suiteBoards = 100;
+	public static int suiteBlocks = 6;
 
-		for(int file=0; file<problems.length; file++){
-			String tartarusFile = tartarusFiles[problems[file]];
-			String tartarusName = tartarusNames[problems[file]];
-			System.out.printf("Running on %s%n", tartarusName);
+	public static void main(String[] args) throws IOException{
+		RunArchiveWriter archive = new RunArchiveWriter(new File("log/archive/Tartarus.xcsa"), true);
 
-			Tartarus tartarus = new Tartarus(("data/" + tartarusFile), 80);
-
-			tartarus.PrintWorld(System.out);
-
-			StatsLogger crossTrialStats = new StatsLogger();
-
-			UpdateMethod[] algos = new UpdateMethod[]{UpdateMethod.NORMAL};
-
-
-			UpdateMethod type = UpdateMethod.NORMAL;
-			String updateMethodName = type.toString();
-			StatsLogger logger = new StatsLogger();
-			constants.setUpdateMethod(type);
-			System.out.println("Type: " + type);
+		try{
+			//		Tartarus tartarus = new Tartarus(("data/" + "World01.txt"), 80);
+
+			String[] tartarusFiles = {"World01.txt"};
+			String[] tartarusNames = {"6x6"};
+			//		int[] numberOfProblems = {5000, 7500, 5000, 10000, 20000, 8000, 8000, 8000, 10000};
+			int[] numberOfProblems = {10};
+
+			//===============Algorithm====================
+			XCSConstantsBuilder constants = new XCSConstantsBuilder();
+			constants.setSP(500);
+			constants.setOmega(1 / 1000);
+			constants.setSpecificityProbability(0.4);
+			constants.setStateDim(16);
+			constants.setBeta(0.2);
+			constants.setGamma(0.7);
+			constants.setPexp(1);
+			constants.setChi(0.8);
+			constants.setMu(0.01);
+			constants.setThetaNma(8);
+			constants.setThetaGA(25);
+			constants.setE0(10);
+			constants.setThetaDel(20);
+			constants.setDoGASubsumption(false);
+			constants.setDoActionSetSubsumption(false);
+
+			int[] problems = {0};
+
+			for(int file=0; file<problems.length; file++){
+				String tartarusFile = tartarusFiles[problems[file]];
+				String tartarusName = tartarusNames[problems[file]];
+				System.out.printf("Running on %s%n", tartarusName);
+
+				Tartarus tartarus = new Tartarus(("data/" + tartarusFile), 80);
+
+				tartarus.PrintWorld(System.out);
+
+				TartarusBoardSuite suite = TartarusBoardSuite.generate(suiteBoards, 6, suiteBlocks, file);
+
+				StatsLogger crossTrialStats = new StatsLogger();
+
+				UpdateMethod[] algos = new UpdateMethod[]{UpdateMethod.NORMAL};
+
+
+				UpdateMethod type = UpdateMethod.NORMAL;
+				String updateMethodName = type.toString();
+				StatsLogger logger = new StatsLogger(false);
+				constants.setUpdateMethod(type);
+				System.out.println("Type: " + type);
+
+				for(int i=0; i<trials; i++){
+					XCS<StringState, StringCondition, Action> xcs = new XCS<StringState, StringCondition, Action>(constants.build(), Action.values());
+					xcs.runXCSMultistep(tartarus, numberOfProblems[problems[file]], Tartarus.captureInterval);
+					logger.logRun(xcs.getStats());
+					archive.writeRun(updateMethodName, tartarusName, i, xcs.getStats());
+
+					RunningStatistic score = suite.evaluate(xcs.freeze(new StringStateCodec(2 * NUM_SENSORS)), 80);
+					System.out.printf("Run %d completed. Mean score on %d boards: %3.2f +/- %3.2f%n", i + 1, suiteBoards, score.getMean(), score.getConfidenceInterval());
+				}
 
-			for(int i=0; i<trials; i++){
-				XCS<StringState, StringCondition, Action> xcs = new XCS<StringState, StringCondition, Action>(constants.build(), Action.values());
-				xcs.runXCSMultistep(tartarus, numberOfProblems[problems[file]], Tartarus.captureInterval);
-				logger.logRun(xcs.getStats());
+				crossTrialStats.logTrial(logger);
 
-				System.out.printf("Run %d completed%n", i + 1);
-			}
+				try{
+					logger.writeCSVFiles(String.format("log/csv/%s/%s/Trial <TRIAL_NUM>.csv", updateMethodName, tartarusName), "Average Number of Steps to Goal");
+					logger.writeChartsAsSinglePlot(String.format("log/charts/%s/%s/<CHART_TITLE>.png", updateMethodName, tartarusName), String.format("%s on %s", updateMethodName, tartarusName), "Average Number of Steps to Goal");
+				}
+				catch(IOException e){
+					e.printStackTrace();
+				}
 
-			crossTrialStats.logTrial(logger.getStatsList());
+				String[] names = new String[algos.length];
+				for(int i = 0;i < names.length;i ++){
+					names[i] = type.toString();
+				}
 
-			try{
-				logger.writeLogAndCSVFiles(String.format("log/csv/%s/%s/Trial <TRIAL_NUM>.csv", updateMethodName, tartarusName), String.format("log/datadump/%s/<TIMESTEP_NUM>.log", updateMethodName), "Average Number of Steps to Goal");
-				logger.writeChartsAsSinglePlot(String.format("log/charts/%s/%s/<CHART_TITLE>.png", updateMethodName, tartarusName), String.format("%s on %s", updateMethodName, tartarusName), "Average Number of Steps to Goal");
-			}
-			catch(IOException e){
-				e.printStackTrace();
-			}
+				try{
+					crossTrialStats.writeChartsAsMultiPlot(String.format("log/charts/%s/<CHART_TITLE>.png", tartarusName), tartarusName, names, "Average Number of Steps to Goal");
+				}
+				catch(IOException e){
+					e.printStackTrace();
+				}
 
-			String[] names = new String[algos.length];
-			for(int i = 0;i < names.length;i ++){
-				names[i] = type.toString();
-			}
 
-			try{
-				crossTrialStats.writeChartsAsMultiPlot(String.format("log/charts/%s/<CHART_TITLE>.png", tartarusName), tartarusName, names, "Average Number of Steps to Goal");
-			}
-			catch(IOException e){
-				e.printStackTrace();
 			}
 
-
+			ChartRenderer.getDefault().awaitCompletion();
+		}
+		finally{
+			archive.close();
 		}
-
 	}
 
 }
@@ -0,0 +1,127 @@
+package xcs.testbed;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * The initial layout of a square Tartarus board, not including the surrounding walls.
+ * Boards are immutable, so one board can be shared by any number of Tartarus environments.
+ *
+ * The text format is the size of the board on the first line, followed by one line per row
+ * with 'O' for an empty cell, 'B' for a block and 'W' for a wall.
+ */
+public class TartarusBoard {
+	public static final char EMPTY = 'O';
+	public static final char BLOCK = 'B';
+	public static final char WALL = 'W';
+
+	private final int size;
+
+	/* The cells of the board, row by row in the order they appear in the file */
+	private final char[] cells;
+
+	/**
+	 * Creates a new board
+	 * @param size The width and height of the board
+	 * @param cells The cells of the board, row by row. Copied.
+	 */
+	public TartarusBoard(int size, char[] cells){
+		if(cells.length != size * size)throw new IllegalArgumentException("Expected " + (size * size) + " cells, got " + cells.length);
+		for(char c : cells){
+			if(c != EMPTY && c != BLOCK && c != WALL)throw new IllegalArgumentException("Map contains invalid characters (" + c + ")");
+		}
+		this.size = size;
+		this.cells = cells.clone();
+	}
+
+	/**
+	 * Reads a board from the given file. Rows shorter than the board are padded with walls.
+	 * @param file The file to read
+	 * @return The board in the file
+	 */
+	public static TartarusBoard load(File file) throws IOException{
+		BufferedReader input = new BufferedReader(new FileReader(file));
+		try{
+			int size = Integer.parseInt(input.readLine().trim());
+			char[] cells = new char[size * size];
+			Arrays.fill(cells, WALL);
+			for(int y = 0;y < size;y ++){
+				String line = input.readLine();
+				if(line == null)break;
+				for(int x = 0;x < line.length() && x < size;x ++){
+					cells[y * size + x] = line.charAt(x);
+				}
+			}
+			return new TartarusBoard(size, cells);
+		}
+		finally{
+			input.close();
+		}
+	}
+
+	/**
+	 * Writes this board to the given file in the text format
+	 * @param file The file to write to
+	 */
+	public void write(File file) throws IOException{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)parent.mkdirs();
+		Writer out = new FileWriter(file);
+		try{
+			out.write(toString());
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	 * @return The cell in the given column of the given row, where row 0 is the first row in the file
+	 */
+	public char getCell(int x, int y){
+		return cells[y * size + x];
+	}
+
+	/**
+	 * @return The number of blocks on this board
+	 */
+	public int getBlockCount(){
+		int count = 0;
+		for(char c : cells){
+			if(c == BLOCK)count ++;
+		}
+		return count;
+	}
+
+	@Override
+	public int hashCode(){
+		return 31 * size + Arrays.hashCode(cells);
+	}
+
+	@Override
+	public boolean equals(Object obj){
+		if(this == obj)return true;
+		if(!(obj instanceof TartarusBoard))return false;
+		TartarusBoard other = (TartarusBoard)obj;
+		return size == other.size && Arrays.equals(cells, other.cells);
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder builder = new StringBuilder();
+		builder.append(size).append('\n');
+		for(int y = 0;y < size;y ++){
+			builder.append(cells, y * size, size).append('\n');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,204 @@
+package xcs.testbed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import xcs.Policy;
+import xcs.stats.RunningStatistic;
+
+/**
+ * A set of random Tartarus boards used to measure how well a policy pushes blocks to the edges.
+ *
+ * The fitness of a policy is its mean score over every board, where each board is played
+ * as an independent episode from a seeded starting position. Episodes are run in parallel.
+ */
+public class TartarusBoardSuite {
+	private final List<TartarusBoard> boards;
+
+	/* The seed of the agents starting position on each board */
+	private final long seed;
+
+	/* A Tartarus for each board, which is forked rather than rebuilt when an episode needs a new one */
+	private final List<Tartarus> templates;
+
+	/* Per board, the Tartarus environments free to be reset and reused by the next episode */
+	private final List<Queue<Tartarus>> pools;
+
+	/**
+	 * Creates a suite of the given boards
+	 * @param boards The boards in the suite
+	 * @param seed The seed used to place the agent on each board
+	 */
+	public TartarusBoardSuite(List<TartarusBoard> boards, long seed){
+		this.boards = Collections.unmodifiableList(new ArrayList<TartarusBoard>(boards));
+		this.seed = seed;
+
+		templates = new ArrayList<Tartarus>(boards.size());
+		pools = new ArrayList<Queue<Tartarus>>(boards.size());
+		for(TartarusBoard board : this.boards){
+			//Steps are counted by play rather than by the environment
+			templates.add(new Tartarus(board, 0, seed));
+			pools.add(new ConcurrentLinkedQueue<Tartarus>());
+		}
+	}
+
+	/**
+	 * Generates a suite of random valid boards. Blocks are only placed away from the edges,
+	 * and never in a 2x2 square, which could not be moved.
+	 * @param count The number of boards to generate
+	 * @param size The width and height of each board. Must be at least 4
+	 * @param blocks The number of blocks on each board
+	 * @param seed The seed of the boards and the starting positions of the agent
+	 * @return The generated suite
+	 */
+	public static TartarusBoardSuite generate(int count, int size, int blocks, long seed){
+		if(size < 4)throw new IllegalArgumentException("Board size must be at least 4");
+		int inner = size - 2;
+		if(blocks < 0 || blocks >= inner * inner)throw new IllegalArgumentException("Cannot place " + blocks + " blocks on a board of size " + size);
+
+		Random random = new Random(seed);
+		List<TartarusBoard> boards = new ArrayList<TartarusBoard>(count);
+		while(boards.size() < count){
+			char[] cells = new char[size * size];
+			for(int i = 0;i < cells.length;i ++)cells[i] = TartarusBoard.EMPTY;
+
+			int placed = 0;
+			int attempts = 0;
+			while(placed < blocks && attempts ++ < 100 * inner * inner){
+				int x = 1 + random.nextInt(inner);
+				int y = 1 + random.nextInt(inner);
+				if(cells[y * size + x] == TartarusBoard.BLOCK)continue;
+				cells[y * size + x] = TartarusBoard.BLOCK;
+				if(formsSquare(cells, size, x, y)){
+					cells[y * size + x] = TartarusBoard.EMPTY;
+					continue;
+				}
+				placed ++;
+			}
+
+			//Too dense to place without squares, start the board again
+			if(placed < blocks)continue;
+			boards.add(new TartarusBoard(size, cells));
+		}
+
+		return new TartarusBoardSuite(boards, seed);
+	}
+
+	/**
+	 * Checks whether the block at (x, y) is part of a 2x2 square of blocks
+	 */
+	private static boolean formsSquare(char[] cells, int size, int x, int y){
+		for(int dy = -1;dy <= 0;dy ++){
+			for(int dx = -1;dx <= 0;dx ++){
+				int left = x + dx;
+				int top = y + dy;
+				if(left < 0 || top < 0 || left + 1 >= size || top + 1 >= size)continue;
+				if(cells[top * size + left] == TartarusBoard.BLOCK && cells[top * size + left + 1] == TartarusBoard.BLOCK
+						&& cells[(top + 1) * size + left] == TartarusBoard.BLOCK && cells[(top + 1) * size + left + 1] == TartarusBoard.BLOCK){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public List<TartarusBoard> getBoards(){
+		return boards;
+	}
+
+	/**
+	 * Plays the given policy on every board, using one thread per processor
+	 * @param policy The policy to evaluate
+	 * @param numSteps The number of steps in each episode
+	 * @return The statistics of the final score of each episode
+	 */
+	public RunningStatistic evaluate(Policy<StringState, Tartarus.Action> policy, int numSteps){
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "Tartarus Evaluation");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try{
+			return evaluate(policy, numSteps, executor);
+		}
+		finally{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Plays the given policy on every board
+	 * @param policy The policy to evaluate. Must be safe to use from multiple threads
+	 * @param numSteps The number of steps in each episode
+	 * @param executor The executor to run the episodes on
+	 * @return The statistics of the final score of each episode
+	 */
+	public RunningStatistic evaluate(final Policy<StringState, Tartarus.Action> policy, final int numSteps, ExecutorService executor){
+		List<Future<Integer>> scores = new ArrayList<Future<Integer>>(boards.size());
+		for(int i = 0;i < boards.size();i ++){
+			final int board = i;
+			final long episodeSeed = seed + i;
+			scores.add(executor.submit(new Callable<Integer>(){
+				@Override
+				public Integer call(){
+					return play(policy, board, numSteps, episodeSeed);
+				}
+			}));
+		}
+
+		RunningStatistic statistic = new RunningStatistic();
+		try{
+			for(Future<Integer> score : scores){
+				statistic.add(score.get());
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted evaluating policy", e);
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException)throw (RuntimeException)e.getCause();
+			throw new IllegalStateException("Failed to evaluate policy", e.getCause());
+		}
+		return statistic;
+	}
+
+	/**
+	 * Plays a single episode of the given policy on the given board, reusing a pooled Tartarus if one is free
+	 * @param board The index of the board to play on
+	 * @return The score of the board at the end of the episode
+	 */
+	private int play(Policy<StringState, Tartarus.Action> policy, int board, int numSteps, long seed){
+		Queue<Tartarus> pool = pools.get(board);
+		Tartarus tartarus = pool.poll();
+		if(tartarus == null){
+			tartarus = templates.get(board).fork(seed);
+		}
+		else{
+			tartarus.reset(seed);
+		}
+
+		try{
+			for(int step = 0;step < numSteps;step ++){
+				tartarus.performAction(policy.getAction(tartarus.getState()));
+			}
+			return tartarus.Score();
+		}
+		finally{
+			pool.offer(tartarus);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package xcs.testbed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import xcs.Classifier;
+import xcs.PopulationIndex;
+
+/**
+ * A PopulationIndex for binary StringConditions, as a trie with one level per position
+ * and a branch for each of 0, 1 and the wildcard. The leaf of a condition holds its
+ * classifiers grouped by action.
+ *
+ * Matching a state follows the branch of the state's bit and the wildcard branch at each
+ * level, so it only visits conditions that agree with the state on a prefix. The same trie
+ * answers exact lookups of a condition and action, and which conditions are more or less
+ * general than a given one.
+ *
+ * @param <A> The type of actions of the classifiers
+ */
+public class TernaryTrieIndex<A> implements PopulationIndex<StringState, StringCondition, A> {
+
+	private static final int ZERO = 0;
+	private static final int ONE = 1;
+	private static final int WILDCARD = 2;
+
+	private Node<A> root = new Node<A>();
+
+	/* The condition each classifier was indexed under, so that it can be found if its condition changes */
+	private final Map<Classifier<A, StringCondition>, String> indexedConditions = new IdentityHashMap<Classifier<A, StringCondition>, String>();
+
+	/**
+	 * A level of the trie. Nodes at the depth of the condition length are leaves
+	 */
+	private static final class Node<A> {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		final Node<A>[] children = new Node[3];
+
+		/* The classifiers of the condition ending here, by action. Only used in leaves */
+		Map<A, List<Classifier<A, StringCondition>>> leaves;
+
+		/* The number of classifiers below this node */
+		int size;
+	}
+
+	private static int symbol(char c){
+		switch(c){
+		case '0':
+			return ZERO;
+		case '1':
+			return ONE;
+		case StringCondition.wildcard:
+			return WILDCARD;
+		default:
+			throw new IllegalArgumentException("Not a binary condition char: " + c);
+		}
+	}
+
+	@Override
+	public void add(Classifier<A, StringCondition> classifier){
+		if(indexedConditions.containsKey(classifier))return;
+
+		String condition = classifier.getCondition().getCondition();
+		Node<A> node = root;
+		node.size ++;
+		for(int i = 0;i < condition.length();i ++){
+			int symbol = symbol(condition.charAt(i));
+			Node<A> child = node.children[symbol];
+			if(child == null){
+				child = new Node<A>();
+				node.children[symbol] = child;
+			}
+			node = child;
+			node.size ++;
+		}
+
+		if(node.leaves == null)node.leaves = new HashMap<A, List<Classifier<A, StringCondition>>>();
+		List<Classifier<A, StringCondition>> classifiers = node.leaves.get(classifier.getAction());
+		if(classifiers == null){
+			classifiers = new ArrayList<Classifier<A, StringCondition>>(1);
+			node.leaves.put(classifier.getAction(), classifiers);
+		}
+		classifiers.add(classifier);
+		indexedConditions.put(classifier, condition);
+	}
+
+	@Override
+	public void remove(Classifier<A, StringCondition> classifier){
+		String condition = indexedConditions.remove(classifier);
+		if(condition == null)return;
+
+		Node<A> node = root;
+		node.size --;
+		for(int i = 0;i < condition.length();i ++){
+			int symbol = symbol(condition.charAt(i));
+			Node<A> child = node.children[symbol];
+			child.size --;
+			if(child.size == 0){
+				//Nothing else below, so drop the whole branch
+				node.children[symbol] = null;
+				return;
+			}
+			node = child;
+		}
+
+		//Classifiers are identified by reference, as Classifier.equals does not identify them
+		for(Map.Entry<A, List<Classifier<A, StringCondition>>> entry : node.leaves.entrySet()){
+			List<Classifier<A, StringCondition>> classifiers = entry.getValue();
+			for(int i = 0;i < classifiers.size();i ++){
+				if(classifiers.get(i) == classifier){
+					classifiers.remove(i);
+					if(classifiers.isEmpty())node.leaves.remove(entry.getKey());
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void update(Classifier<A, StringCondition> classifier){
+		if(!indexedConditions.containsKey(classifier))return;
+
+		remove(classifier);
+		add(classifier);
+	}
+
+	@Override
+	public void clear(){
+		root = new Node<A>();
+		indexedConditions.clear();
+	}
+
+	/**
+	 * @return The number of classifiers in the index
+	 */
+	public int size(){
+		return root.size;
+	}
+
+	@Override
+	public Set<Classifier<A, StringCondition>> match(StringState state){
+		Set<Classifier<A, StringCondition>> matches = new HashSet<Classifier<A, StringCondition>>();
+		match(root, state.getState(), 0, matches);
+		return matches;
+	}
+
+	private void match(Node<A> node, String state, int depth, Set<Classifier<A, StringCondition>> matches){
+		if(node.leaves != null){
+			for(List<Classifier<A, StringCondition>> classifiers : node.leaves.values()){
+				matches.addAll(classifiers);
+			}
+		}
+		if(depth == state.length())return;
+
+		Node<A> exact = node.children[state.charAt(depth) == '1' ? ONE : ZERO];
+		if(exact != null)match(exact, state, depth + 1, matches);
+		Node<A> wildcard = node.children[WILDCARD];
+		if(wildcard != null)match(wildcard, state, depth + 1, matches);
+	}
+
+	/**
+	 * Finds an indexed classifier with the same condition and action as those given
+	 * @return The first such classifier, or null if there is none
+	 */
+	@Override
+	public Classifier<A, StringCondition> find(StringCondition condition, A action){
+		String con = condition.getCondition();
+		Node<A> node = root;
+		for(int i = 0;i < con.length() && node != null;i ++){
+			node = node.children[symbol(con.charAt(i))];
+		}
+		if(node == null || node.leaves == null)return null;
+
+		List<Classifier<A, StringCondition>> classifiers = node.leaves.get(action);
+		return classifiers == null ? null : classifiers.get(0);
+	}
+
+	/**
+	 * Finds every indexed classifier whose condition is at least as general as the given one,
+	 * that is has a wildcard or the same bit at every position. Includes equal conditions
+	 */
+	public List<Classifier<A, StringCondition>> findAsGeneral(StringCondition condition){
+		List<Classifier<A, StringCondition>> found = new ArrayList<Classifier<A, StringCondition>>();
+		collect(root, condition.getCondition(), 0, true, found);
+		return found;
+	}
+
+	/**
+	 * Finds every indexed classifier whose condition is at least as specific as the given one,
+	 * that is has the same bit wherever the given one has a bit. Includes equal conditions
+	 */
+	public List<Classifier<A, StringCondition>> findAsSpecific(StringCondition condition){
+		List<Classifier<A, StringCondition>> found = new ArrayList<Classifier<A, StringCondition>>();
+		collect(root, condition.getCondition(), 0, false, found);
+		return found;
+	}
+
+	private void collect(Node<A> node, String condition, int depth, boolean general, List<Classifier<A, StringCondition>> found){
+		if(depth == condition.length()){
+			if(node.leaves != null){
+				for(List<Classifier<A, StringCondition>> classifiers : node.leaves.values()){
+					found.addAll(classifiers);
+				}
+			}
+			return;
+		}
+
+		int symbol = symbol(condition.charAt(depth));
+		for(int branch = 0;branch < 3;branch ++){
+			Node<A> child = node.children[branch];
+			if(child == null)continue;
+
+			boolean follow;
+			if(general)follow = branch == symbol || branch == WILDCARD;
+			else follow = branch == symbol || symbol == WILDCARD;
+			if(follow)collect(child, condition, depth + 1, general, found);
+		}
+	}
+}